@@ -1,17 +1,39 @@
 package com.github.culmat.eexplorer;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.URL;
 import java.nio.charset.Charset;
 import java.util.Scanner;
 
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.IResourceDeltaVisitor;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.FileLocator;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Path;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.jface.resource.ImageDescriptor;
 import org.eclipse.ui.plugin.AbstractUIPlugin;
 import org.osgi.framework.BundleContext;
 
 import com.github.culmat.eexplorer.os.OperatingSystem;
+import com.github.culmat.eexplorer.views.ContentSearch;
+import com.github.culmat.eexplorer.views.ExplorerView;
+import com.github.culmat.eexplorer.views.NavigationScheduler;
+import com.github.culmat.eexplorer.views.PathExistenceCache;
+import com.github.culmat.eexplorer.views.WorkspaceIndex;
+
+import nu.bibi.breadcrumb.files.DirectorySizes;
+import nu.bibi.breadcrumb.files.DirectoryWatcher;
+import nu.bibi.breadcrumb.files.ImageDataStore;
 
 /**
  * The activator class controls the plug-in life cycle
@@ -19,7 +41,7 @@ import com.github.culmat.eexplorer.os.OperatingSystem;
 public class Activator extends AbstractUIPlugin {
 
 	private enum Preferences {
-		NON_WINDOWS_OK;
+		NON_WINDOWS_OK, NAVIGATION_DELAY, LISTING_MODE, HIBERNATION_DELAY;
 	}
 
 	// The plug-in ID
@@ -28,6 +50,9 @@ public class Activator extends AbstractUIPlugin {
 	// The shared instance
 	private static Activator plugin;
 
+	private IResourceChangeListener resourceListener;
+	private DirectoryWatcher.Listener watcherListener;
+
 	/**
 	 * The constructor
 	 */
@@ -44,6 +69,11 @@ public class Activator extends AbstractUIPlugin {
 	public void start(BundleContext context) throws Exception {
 		super.start(context);
 		plugin = this;
+		getPreferenceStore().setDefault(Preferences.NAVIGATION_DELAY.name(), NavigationScheduler.DEFAULT_QUIET_PERIOD);
+		getPreferenceStore().setDefault(Preferences.LISTING_MODE.name(), !OperatingSystem.CURRENT.equals(OperatingSystem.WINDOWS));
+		getPreferenceStore().setDefault(Preferences.HIBERNATION_DELAY.name(), ExplorerView.DEFAULT_HIBERNATION_DELAY);
+		startImageDataStore();
+		startPathExistenceCache();
 	}
 
 	/*
@@ -54,10 +84,98 @@ public class Activator extends AbstractUIPlugin {
 	 * )
 	 */
 	public void stop(BundleContext context) throws Exception {
+		WorkspaceIndex.shutdown();
+		stopPathExistenceCache();
+		ContentSearch.shutdown();
+		DirectorySizes.shutdown();
+		DirectoryWatcher.shutdown();
+		stopImageDataStore();
 		plugin = null;
 		super.stop(context);
 	}
 
+	/**
+	 * Installs the persistent file icon store and maps it in the background,
+	 * so that the first drop down already finds the icons.
+	 */
+	private void startImageDataStore() {
+		final ImageDataStore store = new ImageDataStore(getStateLocation().append("icons.cache").toFile());
+		ImageDataStore.setDefault(store);
+		Job job = new Job("Load file icons") {
+			@Override
+			protected IStatus run(IProgressMonitor monitor) {
+				store.load();
+				return Status.OK_STATUS;
+			}
+		};
+		job.setSystem(true);
+		job.schedule();
+	}
+
+	/**
+	 * Keeps the path existence cache in sync with the workspace and the
+	 * watched directories.
+	 */
+	private void startPathExistenceCache() {
+		final PathExistenceCache cache = PathExistenceCache.getDefault();
+		resourceListener = new IResourceChangeListener() {
+			@Override
+			public void resourceChanged(IResourceChangeEvent event) {
+				IResourceDelta delta = event.getDelta();
+				if (delta == null)
+					return;
+				try {
+					delta.accept(new IResourceDeltaVisitor() {
+						@Override
+						public boolean visit(IResourceDelta child) {
+							if (child.getKind() == IResourceDelta.ADDED || child.getKind() == IResourceDelta.REMOVED) {
+								IResource resource = child.getResource();
+								IPath location = resource.getLocation();
+								if (location != null)
+									cache.invalidate(location.toFile());
+							}
+							return true;
+						}
+					});
+				} catch (CoreException e) {
+					cache.clear();
+				}
+			}
+		};
+		ResourcesPlugin.getWorkspace().addResourceChangeListener(resourceListener, IResourceChangeEvent.POST_CHANGE);
+		watcherListener = new DirectoryWatcher.Listener() {
+			@Override
+			public void directoryChanged(File directory) {
+				cache.invalidateChildren(directory);
+			}
+		};
+		DirectoryWatcher.getInstance().addListener(watcherListener);
+	}
+
+	private void stopPathExistenceCache() {
+		if (resourceListener != null) {
+			ResourcesPlugin.getWorkspace().removeResourceChangeListener(resourceListener);
+			resourceListener = null;
+		}
+		if (watcherListener != null) {
+			DirectoryWatcher.getInstance().removeListener(watcherListener);
+			watcherListener = null;
+		}
+		PathExistenceCache.getDefault().clear();
+	}
+
+	private void stopImageDataStore() {
+		ImageDataStore store = ImageDataStore.getDefault();
+		ImageDataStore.setDefault(null);
+		if (store != null) {
+			try {
+				store.save();
+			} catch (IOException e) {
+				LogUtil.error("Cannot save the file icons", e);
+			}
+		}
+	}
+
 	/**
 	 * Returns the shared instance
 	 * 
@@ -76,6 +194,43 @@ public class Activator extends AbstractUIPlugin {
 		getPreferenceStore().setValue(Preferences.NON_WINDOWS_OK.name(), !warn);
 	}
 
+	/**
+	 * Returns the quiet period, in milliseconds, before following a selection
+	 * made in the Package Explorer and similar views.
+	 */
+	public int getNavigationDelay() {
+		return getPreferenceStore().getInt(Preferences.NAVIGATION_DELAY.name());
+	}
+
+	public void setNavigationDelay(int delay) {
+		getPreferenceStore().setValue(Preferences.NAVIGATION_DELAY.name(), delay);
+	}
+
+	/**
+	 * Returns whether the Explorer view lists folders in its own table rather
+	 * than in the system folder view of the browser. Defaults to the table
+	 * outside of Windows.
+	 */
+	public boolean isListingMode() {
+		return getPreferenceStore().getBoolean(Preferences.LISTING_MODE.name());
+	}
+
+	public void setListingMode(boolean listing) {
+		getPreferenceStore().setValue(Preferences.LISTING_MODE.name(), listing);
+	}
+
+	/**
+	 * Returns the time, in milliseconds, a hidden Explorer view waits before
+	 * releasing its browser or table; 0 to never release them.
+	 */
+	public int getHibernationDelay() {
+		return getPreferenceStore().getInt(Preferences.HIBERNATION_DELAY.name());
+	}
+
+	public void setHibernationDelay(int delay) {
+		getPreferenceStore().setValue(Preferences.HIBERNATION_DELAY.name(), delay);
+	}
+
 	public String getResourceAsString(String path) throws IOException {
 		return read(getResource(path));
 	}
@@ -2,22 +2,57 @@ package com.github.culmat.eexplorer.actions;
 
 import static com.github.culmat.eexplorer.views.FileDetector.detect;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.jface.action.Action;
+import org.eclipse.jface.viewers.LabelProvider;
+import org.eclipse.jface.window.Window;
 import org.eclipse.swt.dnd.Clipboard;
 import org.eclipse.swt.dnd.TextTransfer;
 import org.eclipse.swt.widgets.Display;
 import org.eclipse.ui.IWorkbenchWindow;
 import org.eclipse.ui.actions.ActionFactory;
 import org.eclipse.ui.actions.ActionFactory.IWorkbenchAction;
+import org.eclipse.ui.dialogs.ElementListSelectionDialog;
 
 import com.github.culmat.eexplorer.views.SyncWithDirectorySelectionListener;
 
+/**
+ * Shows the path found in the clipboard text. The text is scanned line by
+ * line in a background job, up to {@link #MAX_LENGTH} characters and
+ * {@link #BUDGET} milliseconds. Lines longer than {@link #MAX_LINE} characters
+ * are scanned in pieces cut at a blank, so that the budget is checked between
+ * them. Each line, or piece, contributes its longest existing path; if several
+ * distinct paths are found, the user picks one.
+ */
 public class PasteAction extends Action {
+
+	public static final int MAX_LENGTH = 1024 * 1024;
+	public static final int MAX_LINE = 4096;
+	public static final int MAX_PATHS = 20;
+	public static final long BUDGET = 2000;
+
 	final Clipboard cb;
 	private final SyncWithDirectorySelectionListener listener;
+	private final IWorkbenchWindow window;
+	private final Display display;
+	private Job job;
 
 	public PasteAction(Display display, SyncWithDirectorySelectionListener listener, IWorkbenchWindow window) {
 		this.listener = listener;
+		this.window = window;
+		this.display = display;
 		cb = new Clipboard(display);
 		setText("Paste Path");
 		IWorkbenchAction tmp = ActionFactory.PASTE.create(window);
@@ -30,12 +65,98 @@ public class PasteAction extends Action {
 	public void run() {
 		TextTransfer transfer = TextTransfer.getInstance();
 		String data = (String) cb.getContents(transfer);
-		if (data != null) {
-			listener.notifyListener(detect(data));
+		if (data == null)
+			return;
+		if (data.length() > MAX_LENGTH)
+			data = data.substring(0, MAX_LENGTH);
+		if (job != null)
+			job.cancel();
+		final String text = data;
+		job = new Job("Paste Path") {
+			@Override
+			protected IStatus run(IProgressMonitor monitor) {
+				final List<File> paths = scan(text, monitor);
+				if (paths.isEmpty() || monitor.isCanceled() || display.isDisposed())
+					return Status.OK_STATUS;
+				display.asyncExec(new Runnable() {
+					@Override
+					public void run() {
+						show(paths);
+					}
+				});
+				return Status.OK_STATUS;
+			}
+		};
+		job.setSystem(true);
+		job.schedule();
+	}
+
+	/**
+	 * Scans the text line by line, keeping the longest existing path of each
+	 * line or piece of a long line.
+	 */
+	static List<File> scan(String text, IProgressMonitor monitor) {
+		Set<File> paths = new LinkedHashSet<File>();
+		long deadline = System.currentTimeMillis() + BUDGET;
+		BufferedReader reader = new BufferedReader(new StringReader(text));
+		try {
+			String line;
+			lines: while ((line = reader.readLine()) != null) {
+				int start = 0;
+				while (start < line.length()) {
+					if (paths.size() >= MAX_PATHS || monitor.isCanceled())
+						break lines;
+					long remaining = deadline - System.currentTimeMillis();
+					if (remaining <= 0)
+						break lines;
+					int end = pieceEnd(line, start);
+					File file = detect(line.substring(start, end), remaining);
+					if (file != null)
+						paths.add(file.getAbsoluteFile());
+					start = end;
+				}
+			}
+		} catch (IOException e) {
+			// cannot happen with a string
+		}
+		return new ArrayList<File>(paths);
+	}
+
+	/**
+	 * Returns the end of the piece of the line starting at the given index:
+	 * the last blank within {@link #MAX_LINE} characters, if any.
+	 */
+	private static int pieceEnd(String line, int start) {
+		int end = start + MAX_LINE;
+		if (end >= line.length())
+			return line.length();
+		int blank = line.lastIndexOf(' ', end);
+		return blank > start ? blank : end;
+	}
+
+	private void show(List<File> paths) {
+		if (paths.size() == 1) {
+			listener.notifyListener(paths.get(0));
+			return;
+		}
+		ElementListSelectionDialog dialog = new ElementListSelectionDialog(window.getShell(), new LabelProvider() {
+			@Override
+			public String getText(Object element) {
+				return ((File) element).getPath();
+			}
+		});
+		dialog.setTitle("Paste Path");
+		dialog.setMessage("Select the path to show:");
+		dialog.setElements(paths.toArray());
+		dialog.setMultipleSelection(false);
+		if (dialog.open() == Window.OK && dialog.getFirstResult() != null) {
+			listener.notifyListener((File) dialog.getFirstResult());
 		}
 	}
 
 	public void dispose() {
+		if (job != null)
+			job.cancel();
 		cb.dispose();
 	}
 
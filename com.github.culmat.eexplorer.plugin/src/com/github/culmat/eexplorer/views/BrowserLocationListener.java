@@ -4,11 +4,12 @@ import java.io.File;
 import java.net.URI;
 import java.net.URISyntaxException;
 
-import org.eclipse.jface.viewers.IStructuredSelection;
-import org.eclipse.jface.viewers.StructuredSelection;
 import org.eclipse.swt.browser.LocationEvent;
 import org.eclipse.swt.browser.LocationListener;
 
+/**
+ * Parses the top level location of the browser into a file.
+ */
 public abstract class BrowserLocationListener implements LocationListener {
 	
 	@Override
@@ -20,14 +21,12 @@ public abstract class BrowserLocationListener implements LocationListener {
 		if (!event.top)
 			return;
 		try {
-			File file = new File(new URI(event.location));
-			IStructuredSelection selection = new StructuredSelection(file);
-			changed(file, selection);
+			changed(new File(new URI(event.location)));
 		} catch (URISyntaxException e) {
 			e.printStackTrace();
 		}
 	}
 
-	public abstract void changed(File file, IStructuredSelection selection);
+	public abstract void changed(File file);
 
 }
@@ -0,0 +1,524 @@
+package com.github.culmat.eexplorer.views;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+
+/**
+ * Searches the content of the files under a folder, like grep.
+ * <p>
+ * The tree is walked by fork/join tasks, one per folder and per slice of
+ * {@link #SLICE} files. Files are read in chunks of {@link #CHUNK_SIZE}
+ * bytes into a direct buffer of the worker thread, each chunk ending after its
+ * last complete line; the rest is read again with the next chunk. Files are not
+ * memory mapped, since a mapping keeps the file locked until it is garbage
+ * collected. Files with a zero byte in their first {@link #SNIFF_SIZE} bytes
+ * are considered binary and skipped.
+ * Literal text is found with a Boyer-Moore-Horspool search on the bytes;
+ * regular expressions run on the bytes seen as ISO-8859-1 characters, so a
+ * pattern matches UTF-8 text as long as its character classes are ASCII.
+ * Case insensitive searches only fold ASCII letters, and regular expressions
+ * spanning several lines may be missed where a chunk ends. Folders whose name
+ * starts with a dot are skipped, as in the {@link WorkspaceIndex}.
+ * </p>
+ */
+public class ContentSearch {
+
+	public static final int MAX_HITS = 10000;
+	public static final int MAX_HITS_PER_FILE = 100;
+	public static final int SNIFF_SIZE = 8192;
+	public static final int CHUNK_SIZE = 1 << 20;
+	public static final long MAX_FILE_SIZE = 1L << 30;
+	public static final long NOTIFY_INTERVAL = 200;
+
+	static final int SLICE = 32;
+	private static final int MAX_LINE = 200;
+
+	public static class Hit {
+		public final File file;
+		public final int line;
+		public final String text;
+
+		Hit(File file, int line, String text) {
+			this.file = file;
+			this.line = line;
+			this.text = text;
+		}
+	}
+
+	public static interface Collector {
+		/**
+		 * Called from a background thread with the next hits.
+		 */
+		void found(List<Hit> hits);
+
+		/**
+		 * Called from a background thread once the search ended.
+		 * 
+		 * @param complete
+		 *            <code>false</code> if the search was cancelled or
+		 *            stopped at {@link ContentSearch#MAX_HITS}.
+		 */
+		void done(int files, boolean complete);
+	}
+
+	private static ForkJoinPool searches;
+
+	private static final ThreadLocal<ByteBuffer> BUFFERS = new ThreadLocal<ByteBuffer>() {
+		@Override
+		protected ByteBuffer initialValue() {
+			return ByteBuffer.allocateDirect(CHUNK_SIZE);
+		}
+	};
+
+	private final File root;
+	private final byte[] literal;
+	private final int[] shifts;
+	private final Pattern pattern;
+	private final boolean caseSensitive;
+
+	private final AtomicInteger hits = new AtomicInteger();
+	private final AtomicInteger files = new AtomicInteger();
+	private final List<Hit> pending = new ArrayList<Hit>();
+	private long notified;
+	private volatile Collector collector;
+
+	/**
+	 * @throws java.util.regex.PatternSyntaxException
+	 *             if the regular expression is invalid.
+	 */
+	public ContentSearch(File root, String query, boolean regex, boolean caseSensitive) {
+		this.root = root;
+		this.caseSensitive = caseSensitive;
+		if (regex) {
+			// the pattern sees each byte as a character, only \n ends a line
+			// (0x85 is a UTF-8 continuation byte, not a NEL)
+			String bytes = new String(query.getBytes(StandardCharsets.UTF_8), StandardCharsets.ISO_8859_1);
+			pattern = Pattern.compile(bytes,
+					Pattern.MULTILINE | Pattern.UNIX_LINES | (caseSensitive ? 0 : Pattern.CASE_INSENSITIVE));
+			literal = null;
+			shifts = null;
+		} else {
+			pattern = null;
+			literal = query.getBytes(StandardCharsets.UTF_8);
+			if (!caseSensitive) {
+				for (int i = 0; i < literal.length; i++) {
+					literal[i] = lower(literal[i]);
+				}
+			}
+			shifts = new int[256];
+			for (int i = 0; i < 256; i++) {
+				shifts[i] = literal.length;
+			}
+			for (int i = 0; i < literal.length - 1; i++) {
+				shifts[literal[i] & 0xff] = literal.length - 1 - i;
+			}
+		}
+	}
+
+	/**
+	 * Starts the search in a job; cancel the job to stop it.
+	 */
+	public Job start(final Collector collector) {
+		Job job = new Job("Search in " + root) {
+			@Override
+			protected IStatus run(IProgressMonitor monitor) {
+				monitor.beginTask(getName(), IProgressMonitor.UNKNOWN);
+				try {
+					getPool().invoke(new FolderTask(root, monitor));
+				} catch (CancellationException e) {
+					// the pool has been shut down
+				} catch (RejectedExecutionException e) {
+					// the pool has been shut down
+				} finally {
+					notifyCollector(true);
+					collector.done(files.get(), !monitor.isCanceled() && hits.get() < MAX_HITS);
+					monitor.done();
+				}
+				return monitor.isCanceled() ? Status.CANCEL_STATUS : Status.OK_STATUS;
+			}
+		};
+		job.setPriority(Job.LONG);
+		this.collector = collector;
+		job.schedule();
+		return job;
+	}
+
+	private static synchronized ForkJoinPool getPool() {
+		if (searches == null)
+			searches = new ForkJoinPool();
+		return searches;
+	}
+
+	/**
+	 * Stops the running searches and releases the worker threads.
+	 */
+	public static synchronized void shutdown() {
+		if (searches != null) {
+			searches.shutdownNow();
+			searches = null;
+		}
+	}
+
+	private boolean isStopped(IProgressMonitor monitor) {
+		return hits.get() >= MAX_HITS || monitor.isCanceled();
+	}
+
+	/**
+	 * Lists a folder, scans its files in slices and forks a task per
+	 * subfolder.
+	 */
+	private class FolderTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final File folder;
+		private final IProgressMonitor monitor;
+
+		FolderTask(File folder, IProgressMonitor monitor) {
+			this.folder = folder;
+			this.monitor = monitor;
+		}
+
+		@Override
+		protected void compute() {
+			if (isStopped(monitor))
+				return;
+			final List<File> children = new ArrayList<File>();
+			final List<RecursiveAction> tasks = new ArrayList<RecursiveAction>();
+			final Path start = folder.toPath();
+			try {
+				Files.walkFileTree(start, Collections.<FileVisitOption> emptySet(), 1, new SimpleFileVisitor<Path>() {
+					@Override
+					public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+						if (file.equals(start))
+							return FileVisitResult.TERMINATE;
+						String name = file.getFileName().toString();
+						if (attrs.isDirectory()) {
+							if (!name.startsWith("."))
+								tasks.add(new FolderTask(new File(folder, name), monitor));
+						} else if (attrs.isRegularFile() && attrs.size() > 0 && attrs.size() <= MAX_FILE_SIZE) {
+							children.add(new File(folder, name));
+						}
+						return FileVisitResult.CONTINUE;
+					}
+
+					@Override
+					public FileVisitResult visitFileFailed(Path file, IOException exc) {
+						return FileVisitResult.CONTINUE;
+					}
+				});
+			} catch (IOException e) {
+				// search what has been listed
+			}
+			for (int i = 0; i < children.size(); i += SLICE) {
+				tasks.add(new FilesTask(children.subList(i, Math.min(children.size(), i + SLICE)), monitor));
+			}
+			invokeAll(tasks);
+		}
+	}
+
+	private class FilesTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final List<File> slice;
+		private final IProgressMonitor monitor;
+
+		FilesTask(List<File> slice, IProgressMonitor monitor) {
+			this.slice = slice;
+			this.monitor = monitor;
+		}
+
+		@Override
+		protected void compute() {
+			for (File file : slice) {
+				if (isStopped(monitor))
+					return;
+				try {
+					scan(file, monitor);
+				} catch (IOException e) {
+					// unreadable, e.g. locked or deleted meanwhile
+				}
+			}
+		}
+	}
+
+	private void scan(File file, IProgressMonitor monitor) throws IOException {
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			if (channel.size() > MAX_FILE_SIZE)
+				return;
+			ByteBuffer buffer = BUFFERS.get();
+			buffer.clear();
+			List<Hit> found = new ArrayList<Hit>();
+			Lines lines = new Lines(buffer);
+			boolean first = true;
+			boolean eof = false;
+			while (!eof && found.size() < MAX_HITS_PER_FILE && !isStopped(monitor)) {
+				while (buffer.hasRemaining()) {
+					if (channel.read(buffer) < 0) {
+						eof = true;
+						break;
+					}
+				}
+				buffer.flip();
+				if (first) {
+					first = false;
+					if (buffer.limit() == 0)
+						return;
+					files.incrementAndGet();
+					if (isBinary(buffer))
+						return;
+				}
+				int filled = buffer.limit();
+				int end = eof ? filled : lastLineEnd(buffer);
+				int next = end;
+				if (!eof && end == 0) {
+					// a line longer than the buffer, keep the bytes a literal may span
+					end = filled;
+					next = literal != null ? filled - Math.max(0, literal.length - 1) : filled;
+				}
+				buffer.limit(end);
+				if (pattern != null)
+					findPattern(file, buffer, lines, found);
+				else
+					findLiteral(file, buffer, lines, found);
+				lines.shift(next);
+				buffer.limit(filled);
+				buffer.position(next);
+				buffer.compact();
+			}
+			if (!found.isEmpty())
+				add(found);
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Returns the offset after the last line feed of the buffer, 0 if none.
+	 */
+	private static int lastLineEnd(ByteBuffer buffer) {
+		for (int i = buffer.limit() - 1; i >= 0; i--) {
+			if (buffer.get(i) == '\n')
+				return i + 1;
+		}
+		return 0;
+	}
+
+	static boolean isBinary(ByteBuffer buffer) {
+		int end = Math.min(buffer.limit(), SNIFF_SIZE);
+		for (int i = 0; i < end; i++) {
+			if (buffer.get(i) == 0)
+				return true;
+		}
+		return false;
+	}
+
+	private void findLiteral(File file, ByteBuffer buffer, Lines lines, List<Hit> found) {
+		int length = literal.length;
+		int limit = buffer.limit();
+		if (length == 0)
+			return;
+		int last = length - 1;
+		int position = lines.from();
+		while (position <= limit - length) {
+			byte b = buffer.get(position + last);
+			if (!caseSensitive)
+				b = lower(b);
+			if (b == literal[last] && matches(buffer, position)) {
+				found.add(lines.hit(file, position));
+				if (found.size() >= MAX_HITS_PER_FILE)
+					break;
+				// one hit per line
+				position = lines.lineEnd + 1;
+				continue;
+			}
+			position += shifts[b & 0xff];
+		}
+	}
+
+	private boolean matches(ByteBuffer buffer, int position) {
+		for (int i = 0; i < literal.length - 1; i++) {
+			byte b = buffer.get(position + i);
+			if (!caseSensitive)
+				b = lower(b);
+			if (b != literal[i])
+				return false;
+		}
+		return true;
+	}
+
+	private void findPattern(File file, ByteBuffer buffer, Lines lines, List<Hit> found) {
+		Matcher matcher = pattern.matcher(new ByteSequence(buffer, 0, buffer.limit()));
+		int from = lines.from();
+		while (from <= buffer.limit() && matcher.find(from)) {
+			found.add(lines.hit(file, matcher.start()));
+			if (found.size() >= MAX_HITS_PER_FILE)
+				break;
+			from = lines.lineEnd + 1;
+		}
+	}
+
+	private static byte lower(byte b) {
+		return b >= 'A' && b <= 'Z' ? (byte) (b + ('a' - 'A')) : b;
+	}
+
+	/**
+	 * Counts the lines of a buffer up to increasing offsets, across the
+	 * chunks read into it.
+	 */
+	private static class Lines {
+		private final ByteBuffer buffer;
+		private int line = 1;
+		private int counted;
+		// the line of the last hit continues in the next chunk
+		private boolean open;
+		int lineEnd;
+
+		Lines(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		Hit hit(File file, int offset) {
+			count(offset);
+			int start = offset;
+			while (start > 0 && buffer.get(start - 1) != '\n')
+				start--;
+			int end = offset;
+			int limit = buffer.limit();
+			while (end < limit && buffer.get(end) != '\n')
+				end++;
+			lineEnd = end;
+			open = end == limit;
+			int textEnd = end > start && buffer.get(end - 1) == '\r' ? end - 1 : end;
+			// keep the match visible in long lines
+			if (offset - start > MAX_LINE / 2)
+				start = offset - MAX_LINE / 2;
+			textEnd = Math.min(textEnd, start + MAX_LINE);
+			byte[] bytes = new byte[Math.max(0, textEnd - start)];
+			for (int i = 0; i < bytes.length; i++) {
+				bytes[i] = buffer.get(start + i);
+			}
+			return new Hit(file, line, new String(bytes, StandardCharsets.UTF_8).trim());
+		}
+
+		/**
+		 * Returns the offset to search from, after the rest of a line that
+		 * already has a hit.
+		 */
+		int from() {
+			if (!open)
+				return 0;
+			int limit = buffer.limit();
+			for (int i = 0; i < limit; i++) {
+				if (buffer.get(i) == '\n') {
+					open = false;
+					return i + 1;
+				}
+			}
+			return limit + 1;
+		}
+
+		/**
+		 * Counts the lines up to the offset, which becomes the start of the
+		 * buffer once it is compacted for the next chunk.
+		 */
+		void shift(int offset) {
+			count(offset);
+			counted = 0;
+		}
+
+		private void count(int offset) {
+			for (; counted < offset; counted++) {
+				if (buffer.get(counted) == '\n')
+					line++;
+			}
+		}
+	}
+
+	/**
+	 * The bytes of a buffer seen as ISO-8859-1 characters, without copy.
+	 */
+	private static class ByteSequence implements CharSequence {
+		private final ByteBuffer buffer;
+		private final int start;
+		private final int end;
+
+		ByteSequence(ByteBuffer buffer, int start, int end) {
+			this.buffer = buffer;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		public int length() {
+			return end - start;
+		}
+
+		@Override
+		public char charAt(int index) {
+			return (char) (buffer.get(start + index) & 0xff);
+		}
+
+		@Override
+		public CharSequence subSequence(int from, int to) {
+			return new ByteSequence(buffer, start + from, start + to);
+		}
+
+		@Override
+		public String toString() {
+			char[] chars = new char[length()];
+			for (int i = 0; i < chars.length; i++) {
+				chars[i] = charAt(i);
+			}
+			return new String(chars);
+		}
+	}
+
+	private void add(List<Hit> found) {
+		int total = hits.addAndGet(found.size());
+		if (total > MAX_HITS)
+			found = found.subList(0, Math.max(0, found.size() - (total - MAX_HITS)));
+		synchronized (pending) {
+			pending.addAll(found);
+		}
+		notifyCollector(false);
+	}
+
+	private void notifyCollector(boolean force) {
+		List<Hit> next;
+		synchronized (pending) {
+			long now = System.currentTimeMillis();
+			if (pending.isEmpty() || (!force && now - notified < NOTIFY_INTERVAL))
+				return;
+			notified = now;
+			next = new ArrayList<Hit>(pending);
+			pending.clear();
+		}
+		collector.found(next);
+	}
+}
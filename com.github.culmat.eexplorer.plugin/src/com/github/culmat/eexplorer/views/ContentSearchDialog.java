@@ -0,0 +1,230 @@
+package com.github.culmat.eexplorer.views;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.PatternSyntaxException;
+
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.jface.dialogs.Dialog;
+import org.eclipse.jface.dialogs.IDialogConstants;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.events.SelectionAdapter;
+import org.eclipse.swt.events.SelectionEvent;
+import org.eclipse.swt.events.TraverseEvent;
+import org.eclipse.swt.events.TraverseListener;
+import org.eclipse.swt.layout.GridData;
+import org.eclipse.swt.layout.GridLayout;
+import org.eclipse.swt.widgets.Button;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Control;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Event;
+import org.eclipse.swt.widgets.Label;
+import org.eclipse.swt.widgets.Listener;
+import org.eclipse.swt.widgets.Shell;
+import org.eclipse.swt.widgets.Table;
+import org.eclipse.swt.widgets.TableColumn;
+import org.eclipse.swt.widgets.TableItem;
+import org.eclipse.swt.widgets.Text;
+
+/**
+ * Lets the user search the content of the files under a folder with a
+ * {@link ContentSearch}. The hits are shown while they are found; closing the
+ * dialog or starting another search cancels the running one.
+ */
+public class ContentSearchDialog extends Dialog {
+
+	private final File root;
+	private final List<ContentSearch.Hit> hits = new ArrayList<ContentSearch.Hit>();
+
+	private Text text;
+	private Button regex;
+	private Button caseSensitive;
+	private Table table;
+	private Label status;
+	private Job job;
+	private long start;
+	private File selection;
+
+	public ContentSearchDialog(Shell parentShell, File root) {
+		super(parentShell);
+		this.root = root;
+		setShellStyle(getShellStyle() | SWT.RESIZE);
+	}
+
+	/**
+	 * Returns the file of the chosen hit.
+	 */
+	public File getSelection() {
+		return selection;
+	}
+
+	@Override
+	protected void configureShell(Shell shell) {
+		super.configureShell(shell);
+		shell.setText("Search file contents - " + root);
+	}
+
+	@Override
+	protected Control createDialogArea(Composite parent) {
+		Composite area = (Composite) super.createDialogArea(parent);
+		text = new Text(area, SWT.SINGLE | SWT.BORDER | SWT.SEARCH);
+		text.setMessage("text to search, Enter to start");
+		text.setLayoutData(new GridData(SWT.FILL, SWT.CENTER, true, false));
+		Composite options = new Composite(area, SWT.NONE);
+		options.setLayout(new GridLayout(2, false));
+		regex = new Button(options, SWT.CHECK);
+		regex.setText("Regular expression");
+		caseSensitive = new Button(options, SWT.CHECK);
+		caseSensitive.setText("Case sensitive");
+		table = new Table(area, SWT.VIRTUAL | SWT.SINGLE | SWT.BORDER | SWT.FULL_SELECTION);
+		table.setHeaderVisible(true);
+		createColumn("File", 250);
+		createColumn("Line", 50);
+		createColumn("Text", 400);
+		GridData data = new GridData(SWT.FILL, SWT.FILL, true, true);
+		data.widthHint = 700;
+		data.heightHint = 350;
+		table.setLayoutData(data);
+		status = new Label(area, SWT.NONE);
+		status.setLayoutData(new GridData(SWT.FILL, SWT.CENTER, true, false));
+
+		text.addTraverseListener(new TraverseListener() {
+			@Override
+			public void keyTraversed(TraverseEvent e) {
+				if (e.detail == SWT.TRAVERSE_RETURN) {
+					// search instead of closing the dialog
+					e.doit = false;
+					search();
+				}
+			}
+		});
+		SelectionAdapter optionListener = new SelectionAdapter() {
+			@Override
+			public void widgetSelected(SelectionEvent e) {
+				if (job != null)
+					search();
+			}
+		};
+		regex.addSelectionListener(optionListener);
+		caseSensitive.addSelectionListener(optionListener);
+		table.addListener(SWT.SetData, new Listener() {
+			@Override
+			public void handleEvent(Event event) {
+				TableItem item = (TableItem) event.item;
+				ContentSearch.Hit hit = hits.get(table.indexOf(item));
+				item.setText(new String[] { relativePath(hit.file), String.valueOf(hit.line), hit.text });
+			}
+		});
+		table.addSelectionListener(new SelectionAdapter() {
+			@Override
+			public void widgetDefaultSelected(SelectionEvent e) {
+				okPressed();
+			}
+		});
+		status.setText("Searching in " + root);
+		return area;
+	}
+
+	@Override
+	protected Control createButtonBar(Composite parent) {
+		Control bar = super.createButtonBar(parent);
+		getButton(IDialogConstants.OK_ID).setEnabled(false);
+		return bar;
+	}
+
+	private void createColumn(String name, int width) {
+		TableColumn column = new TableColumn(table, SWT.NONE);
+		column.setText(name);
+		column.setWidth(width);
+	}
+
+	private String relativePath(File file) {
+		String path = file.getPath();
+		String prefix = root.getPath();
+		if (path.startsWith(prefix) && path.length() > prefix.length())
+			return path.substring(prefix.length() + (prefix.endsWith(File.separator) ? 0 : 1));
+		return path;
+	}
+
+	private void search() {
+		cancel();
+		hits.clear();
+		table.setItemCount(0);
+		getButton(IDialogConstants.OK_ID).setEnabled(false);
+		if (text.getText().isEmpty()) {
+			status.setText("Searching in " + root);
+			return;
+		}
+		ContentSearch search;
+		try {
+			search = new ContentSearch(root, text.getText(), regex.getSelection(), caseSensitive.getSelection());
+		} catch (PatternSyntaxException e) {
+			status.setText(e.getDescription());
+			return;
+		}
+		status.setText("Searching...");
+		start = System.nanoTime();
+		final Display display = table.getDisplay();
+		final Job[] started = new Job[1];
+		started[0] = job = search.start(new ContentSearch.Collector() {
+			@Override
+			public void found(final List<ContentSearch.Hit> found) {
+				display.asyncExec(new Runnable() {
+					@Override
+					public void run() {
+						if (table.isDisposed() || job != started[0])
+							return;
+						boolean first = hits.isEmpty();
+						hits.addAll(found);
+						table.setItemCount(hits.size());
+						if (first && !hits.isEmpty()) {
+							table.setSelection(0);
+							getButton(IDialogConstants.OK_ID).setEnabled(true);
+						}
+						status.setText(hits.size() + " matches, searching...");
+					}
+				});
+			}
+
+			@Override
+			public void done(final int files, final boolean complete) {
+				display.asyncExec(new Runnable() {
+					@Override
+					public void run() {
+						if (table.isDisposed() || job != started[0])
+							return;
+						long millis = (System.nanoTime() - start) / 1000000;
+						String message = hits.size() + " matches in " + files + " files, " + millis + " ms";
+						if (!complete)
+							message += hits.size() >= ContentSearch.MAX_HITS ? " (limit reached)" : " (stopped)";
+						status.setText(message);
+					}
+				});
+			}
+		});
+	}
+
+	private void cancel() {
+		if (job != null) {
+			job.cancel();
+			job = null;
+		}
+	}
+
+	@Override
+	public boolean close() {
+		cancel();
+		return super.close();
+	}
+
+	@Override
+	protected void okPressed() {
+		int index = table.getSelectionIndex();
+		if (index < 0)
+			return;
+		selection = hits.get(index).file;
+		super.okPressed();
+	}
+}
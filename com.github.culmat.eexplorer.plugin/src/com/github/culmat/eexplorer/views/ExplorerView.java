@@ -2,8 +2,6 @@ package com.github.culmat.eexplorer.views;
 
 import java.io.File;
 import java.io.IOException;
-import java.net.URI;
-import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLDecoder;
 
@@ -19,11 +17,16 @@ import org.eclipse.jface.viewers.DoubleClickEvent;
 import org.eclipse.jface.viewers.IDoubleClickListener;
 import org.eclipse.jface.viewers.ISelection;
 import org.eclipse.jface.viewers.IStructuredSelection;
+import org.eclipse.jface.viewers.StructuredSelection;
+import org.eclipse.jface.window.Window;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.SWTError;
 import org.eclipse.swt.browser.Browser;
+import org.eclipse.swt.browser.ProgressAdapter;
+import org.eclipse.swt.browser.ProgressEvent;
 import org.eclipse.swt.browser.TitleEvent;
 import org.eclipse.swt.browser.TitleListener;
+import org.eclipse.swt.custom.StackLayout;
 import org.eclipse.swt.layout.GridData;
 import org.eclipse.swt.layout.GridLayout;
 import org.eclipse.swt.program.Program;
@@ -65,7 +68,20 @@ public class ExplorerView extends ViewPart implements FileSelectionListener, ISh
 
 	private static final String CONTEXT_ID = "com.github.culmat.eexplorer.context";
 
+	/**
+	 * The default time, in milliseconds, a hidden view keeps its browser or
+	 * table before releasing it.
+	 */
+	public static final int DEFAULT_HIBERNATION_DELAY = 5 * 60 * 1000;
+
+	private Composite content;
+	private StackLayout stack;
 	private Browser browser;
+	private FolderTable table;
+	private boolean listing;
+	private boolean sizes;
+	private final NavigationHistory history = new NavigationHistory();
+	private File pendingSelection;
 
 	private SyncWithDirectorySelectionListener selectionListener;
 
@@ -75,6 +91,10 @@ public class ExplorerView extends ViewPart implements FileSelectionListener, ISh
 	private CopyAction  copyAction;
 	private boolean syncing = true;
 	private boolean disabed = false;
+	private boolean loading = false;
+	private IAction backAction;
+	private IAction forwardAction;
+	private IAction upAction;
 
 	@Override
 	public void init(IViewSite site) throws PartInitException {
@@ -101,6 +121,10 @@ public class ExplorerView extends ViewPart implements FileSelectionListener, ISh
 			return;
 		}
 		selectionListener.setEnabled(syncing);
+		Display.getCurrent().timerExec(-1, hibernation);
+		if (content != null && !content.isDisposed() && stack.topControl == null) {
+			setListing(listing);
+		}
 	}
 	
 	@Override
@@ -109,6 +133,37 @@ public class ExplorerView extends ViewPart implements FileSelectionListener, ISh
 			return;
 		}
 		selectionListener.setEnabled(false);
+		int delay = Activator.getDefault().getHibernationDelay();
+		if (delay > 0) {
+			Display.getCurrent().timerExec(delay, hibernation);
+		}
+	}
+
+	private final Runnable hibernation = new Runnable() {
+		@Override
+		public void run() {
+			hibernate();
+		}
+	};
+
+	/**
+	 * Releases the browser or the table of a hidden view. The history is
+	 * kept, the widget is created again when the view is shown.
+	 */
+	private void hibernate() {
+		if (content == null || content.isDisposed()) {
+			return;
+		}
+		stack.topControl = null;
+		if (browser != null) {
+			browser.dispose();
+			browser = null;
+			loading = false;
+		}
+		if (table != null) {
+			table.getControl().dispose();
+			table = null;
+		}
 	}
 
 	public void focusBreadcrump() {
@@ -118,8 +173,10 @@ public class ExplorerView extends ViewPart implements FileSelectionListener, ISh
 	@Override
 	public void dispose() {	
 		super.dispose();
-		selectionListener.setEnabled(false);
-		browser.dispose();
+		Display.getCurrent().timerExec(-1, hibernation);
+		selectionListener.dispose();
+		if (browser != null)
+			browser.dispose();
 		pasteAction.dispose();
 		copyAction.dispose();
 	}
@@ -146,20 +203,83 @@ public class ExplorerView extends ViewPart implements FileSelectionListener, ISh
 		layout.marginHeight = layout.marginWidth = 0;
 		parent.setLayout(layout);
 		createBreadcrumb(parent);
+		content = new Composite(parent, SWT.NONE);
+		stack = new StackLayout();
+		content.setLayout(stack);
+		content.setLayoutData(new GridData(GridData.FILL_VERTICAL | GridData.FILL_HORIZONTAL));
+
+		forwardAction = createForwardAction();
+		backAction = createBackWardAction();
+		upAction = createUpAction();
+		addHistoryListeners();
+		listing = Activator.getDefault().isListingMode();
+		// the browser or table is created once the view is visible
+		getSite().getShell().getDisplay().asyncExec(new Runnable() {
+			@Override
+			public void run() {
+				if (!content.isDisposed() && stack.topControl == null
+						&& getSite().getPage().isPartVisible(ExplorerView.this)) {
+					setListing(listing);
+				}
+			}
+		});
+
+		registerActions(copyAction, pasteAction, backAction, upAction, forwardAction, createPopOutAction(), createCommandPromptAction(), createSyncAction(), createFileModeAction(), createListingModeAction(), createSizesAction());
+		createGoToFolderAction();
+		createSearchAction();
+	}
+
+	/**
+	 * Shows the folders in the virtual table or in the browser. The widgets
+	 * are created the first time they are needed, so the browser engine is
+	 * not loaded as long as the view is hidden or the table is used.
+	 */
+	private void setListing(boolean listing) {
+		File location = pendingSelection != null ? pendingSelection : history.getCurrent();
+		pendingSelection = null;
+		if (location == null)
+			location = selectionListener.getLastSelection();
+		if (location == null)
+			location = defaultFile;
+		if (!listing && browser == null && !createBrowser()) {
+			listing = true;
+		}
+		if (listing && table == null) {
+			createTable();
+		}
+		this.listing = listing;
+		stack.topControl = listing ? table.getControl() : browser;
+		content.layout();
+		select(location);
+		backAction.setEnabled(history.canGoBack());
+		forwardAction.setEnabled(history.canGoForward());
+	}
+
+	private void createTable() {
+		table = new FolderTable(content);
+		table.setShowSizes(sizes);
+		table.setFolderListener(new FolderTable.FolderListener() {
+			@Override
+			public void changed(File folder) {
+				if (listing)
+					history.visit(folder);
+			}
+		});
+	}
+
+	private boolean createBrowser() {
 		try {
-			browser = new Browser(parent, SWT.NONE);
+			browser = new Browser(content, SWT.NONE);
 			if(disabed) {
 				try {
 					browser.setText(Activator.getDefault().getResourceAsString("html/nonWin.html"));
 				} catch (IOException e) {
 					throw new IllegalStateException("Could not load resource html/nonWin.html" , e);
 				}
-			} else {
-				browser.setUrl(defaultFile.toURI().toString());
 			}
 		} catch (SWTError e) {
 			System.err.println("Unable to open activeX control");
-			return;
+			return false;
 		}
 		browser.addTitleListener(new TitleListener() {
 			
@@ -175,39 +295,51 @@ public class ExplorerView extends ViewPart implements FileSelectionListener, ISh
 				}
 			}
 		});
-		browser.setLayoutData(new GridData(GridData.FILL_VERTICAL | GridData.FILL_HORIZONTAL));
-		final IAction forwardAction = createForwardAction();
-		final IAction backAction = createBackWardAction();
-		browser.addLocationListener(new BrowserLocationListener() {
+		browser.addProgressListener(new ProgressAdapter() {
 			@Override
-			public void changed(File file, IStructuredSelection selection) {
-				forwardAction.setEnabled(browser.isForwardEnabled());
-				backAction.setEnabled(browser.isBackEnabled());
-				setStatus();
-				breadcrumb.setInput(file);
-				breadcrumb.setSelection(selection, false);
+			public void completed(ProgressEvent event) {
+				loading = false;
 			}
 		});
-
-	
 		// TODO focus view when browser gets focus
-		final IAction upAction = createUpAction();
 		browser.addLocationListener(new BrowserLocationListener() {
 			@Override
-			public void changed(File file, IStructuredSelection selection) {
-				upAction.setEnabled(file.getParentFile() != null);
+			public void changed(File file) {
+				if (!listing)
+					history.visit(file);
 			}
 		});
-		
-		browser.addLocationListener(new BrowserLocationListener() {
+		return true;
+	}
+
+	/**
+	 * Follows the location reported by the browser or the table, or stepped
+	 * to in the history.
+	 */
+	private void addHistoryListeners() {
+		history.addListener(new NavigationHistory.Listener() {
 			@Override
-			public void changed(File file, IStructuredSelection selection) {
-				copyAction.setClipboard(file);
-				selectionListener.setLastSelection(file);
+			public void locationChanged(File location) {
+				forwardAction.setEnabled(history.canGoForward());
+				backAction.setEnabled(history.canGoBack());
+				upAction.setEnabled(location.getParentFile() != null);
+			}
+		});
+		history.addListener(new NavigationHistory.Listener() {
+			@Override
+			public void locationChanged(File location) {
+				breadcrumb.setInput(location);
+				breadcrumb.setSelection(new StructuredSelection(location), false);
+			}
+		});
+		history.addListener(new NavigationHistory.Listener() {
+			@Override
+			public void locationChanged(File location) {
+				setStatus(location);
+				copyAction.setClipboard(location);
+				selectionListener.setLastSelection(location);
 			}
 		});
-		
-		registerActions(copyAction, pasteAction, backAction, upAction, forwardAction, createPopOutAction(), createCommandPromptAction(), createSyncAction(), createFileModeAction());
 	}
 
 	private void createBreadcrumb(Composite parent) {
@@ -288,15 +420,51 @@ public class ExplorerView extends ViewPart implements FileSelectionListener, ISh
 		};
 	}
 
+	private Action createListingModeAction() {
+		return new Action("Toggle listing mode", SWT.TOGGLE) {
+			{
+				setToolTipText("Show folders in a table instead of the system folder view");
+				setImageDescriptor(ImageFileRegistry.getResource(ImageFileRegistry.KEY_FILE_DEFAULT));
+				setChecked(listing);
+			}
+
+			@Override
+			public void run() {
+				Activator.getDefault().setListingMode(isChecked());
+				setListing(isChecked());
+				setChecked(listing);
+			}
+		};
+	}
+
+	private Action createSizesAction() {
+		return new Action("Compute folder sizes", SWT.TOGGLE) {
+			{
+				setToolTipText("Show the total size of the folders in the table and the breadcrumb drop downs");
+				setImageDescriptor(ImageFileRegistry.getResource(ImageFileRegistry.KEY_DRIVE_DEFAULT));
+			}
+
+			@Override
+			public void run() {
+				sizes = isChecked();
+				breadcrumb.setShowSizes(sizes);
+				if (table != null)
+					table.setShowSizes(sizes);
+			}
+		};
+	}
+
 	private IAction createBackWardAction() {
 		return registerKey(new UIBrowserAction("Back", Icon.nav_backward) {
 			{
-				setEnabled(browser.isBackEnabled());
+				setEnabled(false);
 			}
 
 			@Override
 			public void run() {
-				browser.back();
+				File location = history.back();
+				if (location != null)
+					select(location);
 			}
 
 		});
@@ -311,19 +479,18 @@ public class ExplorerView extends ViewPart implements FileSelectionListener, ISh
 
 			@Override
 			public void run() {
-				select(getBrowserLocation().getParentFile());
+				File location = getLocation();
+				if (location != null && location.getParentFile() != null)
+					select(location.getParentFile());
 			}
 		});
 	}
 
-	private File getBrowserLocation() {
-		String url = browser.getUrl();
-		try {
-			return new File(new URI(url));
-		} catch (URISyntaxException e) {
-			e.printStackTrace();
-			return null;
-		}
+	/**
+	 * Returns the folder shown, <code>null</code> if none.
+	 */
+	private File getLocation() {
+		return history.getCurrent();
 	}
 	
 	private <T extends IAction> T registerKey(T action) {
@@ -337,12 +504,43 @@ public class ExplorerView extends ViewPart implements FileSelectionListener, ISh
 	private IAction createForwardAction() {
 		return registerKey(new UIBrowserAction("Forward", Icon.nav_forward) {
 			{
-				setEnabled(browser.isForwardEnabled());
+				setEnabled(false);
+			}
+
+			@Override
+			public void run() {
+				File location = history.forward();
+				if (location != null)
+					select(location);
 			}
+		});
+	}
 
+	private IAction createGoToFolderAction() {
+		return registerKey(new Action("Go to folder") {
 			@Override
 			public void run() {
-				browser.forward();
+				GoToFolderDialog dialog = new GoToFolderDialog(getSite().getShell());
+				if (dialog.open() == Window.OK && dialog.getSelection() != null) {
+					selectionListener.notifyListener(dialog.getSelection());
+				}
+			}
+		});
+	}
+
+	private IAction createSearchAction() {
+		return registerKey(new Action("Search file contents") {
+			@Override
+			public void run() {
+				File root = selectionListener.getLastSelection();
+				if (root != null && !root.isDirectory())
+					root = root.getParentFile();
+				if (root == null)
+					root = defaultFile;
+				ContentSearchDialog dialog = new ContentSearchDialog(getSite().getShell(), root);
+				if (dialog.open() == Window.OK && dialog.getSelection() != null) {
+					selectionListener.notifyListener(dialog.getSelection());
+				}
 			}
 		});
 	}
@@ -357,7 +555,8 @@ public class ExplorerView extends ViewPart implements FileSelectionListener, ISh
 			@Override
 			public void run() {
 				if(!lastRun.check()) return;
-				Program.launch(browser.getUrl());
+				File location = getLocation();
+				if(location != null) Program.launch(location.getAbsolutePath());
 			}
 		});
 	}
@@ -387,7 +586,8 @@ public class ExplorerView extends ViewPart implements FileSelectionListener, ISh
 			public void run() {
 				if(!lastRun.check()) return;
 				try {
-					Terminal.launch(new File(new URI(browser.getUrl())));
+					File location = getLocation();
+					if(location != null) Terminal.launch(location);
 				} catch (Exception e) {
 					e.printStackTrace();
 				}
@@ -397,13 +597,31 @@ public class ExplorerView extends ViewPart implements FileSelectionListener, ISh
 
 	@Override
 	public void setFocus() {
-		browser.setFocus();
+		if (stack.topControl != null)
+			stack.topControl.setFocus();
+		else
+			content.setFocus();
 	}
 
 	@Override
 	public void select(File selection) {
+		if(stack == null || stack.topControl == null) {
+			// hibernated, shown once visible again
+			pendingSelection = selection;
+			copyAction.setClipboard(selection);
+			return;
+		}
+		if(listing) {
+			table.setInput(selection);
+			copyAction.setClipboard(selection);
+			return;
+		}
 		if(disabed) return;
-		if(!browser.isDisposed()) browser.setUrl(selection.toURI().toString());
+		if(browser != null && !browser.isDisposed()) {
+			// a superseded folder view is not worth loading to the end
+			if(loading) browser.stop();
+			loading = browser.setUrl(selection.toURI().toString());
+		}
 		copyAction.setClipboard(selection);
 	}
 
@@ -423,9 +641,9 @@ public class ExplorerView extends ViewPart implements FileSelectionListener, ISh
 		return false;
 	}
 
-	private void setStatus() {
+	private void setStatus(File location) {
 		IStatusLineManager statusLine = ExplorerView.this.getViewSite().getActionBars().getStatusLineManager();
-		String absolutePath = getBrowserLocation().getAbsolutePath();
+		String absolutePath = location.getAbsolutePath();
 		statusLine.setMessage(URLDecoder.decode(absolutePath));
 	}
 
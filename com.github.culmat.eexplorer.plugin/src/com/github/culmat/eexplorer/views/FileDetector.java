@@ -3,43 +3,239 @@ package com.github.culmat.eexplorer.views;
 import static java.util.regex.Pattern.compile;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-public class FileDetector { 
+/**
+ * Detects file paths in arbitrary text (clipboard contents, editor selections,
+ * element labels).
+ * <p>
+ * The text is tokenized in a single pass. A candidate starts at a drive
+ * (<code>c:\</code>), a UNC prefix (<code>\\server</code>) or a separator and
+ * runs over segments made of letters, digits, <code>_-.</code> and blanks.
+ * As blanks are allowed, every blank inside a run also ends a shorter
+ * candidate and every separator following a blank starts one. URLs
+ * (<code>scheme://...</code>) are skipped. The candidates are checked longest
+ * first, within a time budget.
+ */
+public class FileDetector {
+
+	/**
+	 * Default time budget for the existence checks, in milliseconds.
+	 */
+	public static final long BUDGET = 250;
+
+	/**
+	 * Maximum number of blanks inside a candidate.
+	 */
+	static final int MAX_BLANKS = 8;
+
+	// the former regular expressions, kept for the benchmark in main()
 	static String pathSeparatorMatcher = "[\\\\/]";
-	
+
 	static Pattern[] patterns = new Pattern[] {
 			compile("(?i)([\\w]:|%s)?(%s[a-z_\\-0-9\\.\\s]+)+".replace("%s", pathSeparatorMatcher)),
 			compile("(?i)([\\w]:|%s)?(%s[a-z_\\-0-9\\.]+)+".replace("%s", pathSeparatorMatcher))
 			};
-	
+
+	private static final Comparator<String> LONGEST_FIRST = new Comparator<String>() {
+		@Override
+		public int compare(String s1, String s2) {
+			return s2.length() - s1.length();
+		}
+	};
+
 	public static File detect(String haystack) {
-		for(Pattern pattern : patterns) {
-			Matcher matcher = pattern.matcher(haystack);
-			while (matcher.find()) {
-				File candidate = new File(matcher.group().trim());
-				if (candidate.exists())
-					return candidate;
-			}
+		return detect(haystack, BUDGET);
+	}
+
+	/**
+	 * Returns the longest existing path found in the given text, or
+	 * <code>null</code> if none is found within the given budget.
+	 */
+	public static File detect(String haystack, long budget) {
+		long deadline = System.nanoTime() + budget * 1000000L;
+		for (String candidate : candidates(haystack)) {
+			File file = new File(candidate);
+			if (PathExistenceCache.getDefault().exists(file))
+				return file;
+			if (System.nanoTime() > deadline)
+				break;
 		}
 		return null;
 	}
-	
+
+	/**
+	 * Extracts the candidate paths of the given text, longest first.
+	 */
+	static List<String> candidates(String text) {
+		Set<String> found = new LinkedHashSet<String>();
+		List<Integer> blanks = new ArrayList<Integer>();
+		List<Integer> starts = new ArrayList<Integer>();
+		int length = text.length();
+		int i = 0;
+		while (i < length) {
+			int separator = firstSeparator(text, i);
+			if (separator < 0) {
+				i = separator == SKIP ? skipWord(text, i) : i + 1;
+				continue;
+			}
+
+			// segments
+			blanks.clear();
+			starts.clear();
+			starts.add(i);
+			int end = separator;
+			int pos = separator;
+			while (pos + 1 < length && isSeparator(text.charAt(pos)) && isSegmentChar(text.charAt(pos + 1))) {
+				if (pos > separator && isBlank(text.charAt(pos - 1)))
+					starts.add(pos);
+				pos++;
+				while (pos < length) {
+					char c = text.charAt(pos);
+					if (isBlank(c)) {
+						if (!isBlank(text.charAt(pos - 1)))
+							blanks.add(pos);
+					} else if (!isSegmentChar(c)) {
+						break;
+					}
+					pos++;
+				}
+				end = pos;
+			}
+			while (isBlank(text.charAt(end - 1)))
+				end--;
+
+			// the run, the runs starting after a blank and their prefixes
+			int first = 0;
+			for (int start : starts) {
+				while (first < blanks.size() && blanks.get(first) <= start)
+					first++;
+				// stop counting past the limit, so each start costs O(MAX_BLANKS)
+				int count = 0;
+				while (count <= MAX_BLANKS && first + count < blanks.size() && blanks.get(first + count) < end)
+					count++;
+				int last = first + Math.min(count, MAX_BLANKS);
+				for (int j = first; j < last; j++) {
+					found.add(text.substring(start, blanks.get(j)));
+				}
+				if (count <= MAX_BLANKS)
+					found.add(text.substring(start, end));
+			}
+			i = end;
+		}
+
+		List<String> result = new ArrayList<String>(found);
+		Collections.sort(result, LONGEST_FIRST);
+		return result;
+	}
+
+	private static final int SKIP = -2;
+
+	/**
+	 * Returns the index of the separator preceding the first segment of a
+	 * path starting at the given index, -1 if no path starts there or
+	 * {@link #SKIP} if an URL starts there.
+	 */
+	private static int firstSeparator(String text, int i) {
+		int length = text.length();
+		char c = text.charAt(i);
+		if (isSeparator(c)) {
+			if (i + 2 < length && isSeparator(text.charAt(i + 1)) && isSegmentChar(text.charAt(i + 2))) {
+				// UNC or URL
+				return i > 0 && text.charAt(i - 1) == ':' ? SKIP : i + 1;
+			}
+			return i + 1 < length && isSegmentChar(text.charAt(i + 1)) ? i : -1;
+		}
+		if (Character.isLetter(c) && (i == 0 || !Character.isLetterOrDigit(text.charAt(i - 1)))
+				&& i + 3 < length && text.charAt(i + 1) == ':' && isSeparator(text.charAt(i + 2))
+				&& isSegmentChar(text.charAt(i + 3))) {
+			return i + 2;
+		}
+		return -1;
+	}
+
+	private static int skipWord(String text, int i) {
+		while (i < text.length() && !Character.isWhitespace(text.charAt(i)))
+			i++;
+		return i;
+	}
+
+	private static boolean isSeparator(char c) {
+		return c == '\\' || c == '/';
+	}
+
+	private static boolean isSegmentChar(char c) {
+		return Character.isLetterOrDigit(c) || c == '_' || c == '-' || c == '.';
+	}
+
+	private static boolean isBlank(char c) {
+		return c == ' ' || c == '\t';
+	}
+
 	public static void main(String[] args) {
 		// run me with -ea or -ea:com.github.culmat... see https://docs.oracle.com/javase/8/docs/technotes/tools/windows/java.html
-		Pattern pattern = patterns[0];
-		assert pattern.matcher("c:\\gugus\\bla").find();
-		assert pattern.matcher("\\gugus\\bla").find();
-		assert pattern.matcher("\\\\gugus\\bla").find();
-		assert pattern.matcher("/gugus/bla").find();
-		assert pattern.matcher("\\gugus\\bla ha\\ja.txt").find();
-		assert pattern.matcher("/gugus/bla ha/ja.txt").find();
-//		pattern would need to start with (?i)\s+		
-//		assert !pattern.matcher("gugus/bla ha/ja.txt").find();
-//		assert !pattern.matcher("https://docs.oracle.com/javase/8/docs/technotes/tools/windows/java.html").find();
+		assert candidates("c:\\gugus\\bla").contains("c:\\gugus\\bla");
+		assert candidates("\\gugus\\bla").contains("\\gugus\\bla");
+		assert candidates("\\\\gugus\\bla").contains("\\\\gugus\\bla");
+		assert candidates("/gugus/bla").contains("/gugus/bla");
+		assert candidates("\\gugus\\bla ha\\ja.txt").contains("\\gugus\\bla ha\\ja.txt");
+		assert candidates("/gugus/bla ha/ja.txt").contains("/gugus/bla ha/ja.txt");
+		assert candidates("see /gugus/bla ha, or not").get(0).equals("/gugus/bla ha");
+		assert candidates("see /gugus/bla ha, or not").contains("/gugus/bla");
+		assert candidates("copy /a/b /c/d").contains("/c/d");
+		assert candidates("https://docs.oracle.com/javase/8/docs/technotes/tools/windows/java.html").isEmpty();
 		System.out.println("assertions OK");
+		benchmark();
+	}
+
+	/**
+	 * Compares the candidate extraction with the former regular expressions.
+	 */
+	private static void benchmark() {
+		StringBuilder paste = new StringBuilder();
+		for (int i = 0; i < 2000; i++) {
+			paste.append("Line ").append(i).append(" of a log, see C:\\work\\project ").append(i)
+					.append("\\src\\Main.java and /usr/local/share/doc for details.\n");
+		}
+		StringBuilder blanks = new StringBuilder("/a");
+		for (int i = 0; i < 20000; i++) {
+			blanks.append(" /");
+		}
+		String[][] inputs = { { "large paste", paste.toString() }, { "line of blanks", blanks.toString() } };
+		for (String[] input : inputs) {
+			long regex = 0;
+			long tokenizer = 0;
+			boolean overflow = false;
+			for (int round = 0; round < 10; round++) {
+				long start = System.nanoTime();
+				try {
+					for (Pattern pattern : patterns) {
+						Matcher matcher = pattern.matcher(input[1]);
+						while (matcher.find()) {
+							matcher.group().trim();
+						}
+					}
+				} catch (StackOverflowError e) {
+					overflow = true;
+				}
+				long middle = System.nanoTime();
+				candidates(input[1]);
+				long end = System.nanoTime();
+				// ignore the warm-up rounds
+				if (round >= 5) {
+					regex += middle - start;
+					tokenizer += end - middle;
+				}
+			}
+			System.out.println(String.format("%-16s regex: %8.2f ms%s  tokenizer: %8.2f ms", input[0],
+					regex / 5e6, overflow ? " (stack overflow)" : "", tokenizer / 5e6));
+		}
 	}
-	
 }
- 	
\ No newline at end of file
@@ -0,0 +1,230 @@
+package com.github.culmat.eexplorer.views;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+
+import com.github.culmat.eexplorer.LogUtil;
+
+/**
+ * Resolves the folder to show for a selected file without touching the file
+ * system on the UI thread. The probe runs on a daemon thread and is abandoned
+ * after {@link #TIMEOUT} milliseconds; the volume or mount point of a path
+ * that timed out is then considered unreachable for {@link #UNREACHABLE_TTL}
+ * milliseconds, so a dead network mount is not probed over and over again.
+ * At most {@link #MAX_PROBES} threads probe at once, since a thread blocked
+ * by a dead mount is only released when the system gives up.
+ */
+public class FileProbe {
+
+	public static final long TIMEOUT = 3000;
+	public static final long UNREACHABLE_TTL = 60000;
+	public static final int MAX_PROBES = 4;
+
+	public static interface Callback {
+		/**
+		 * Called from a background thread with the folder (or the file in file
+		 * mode) to show, <code>null</code> if it does not exist.
+		 */
+		void probed(File target);
+	}
+
+	private static final ThreadPoolExecutor PROBES = new ThreadPoolExecutor(MAX_PROBES, MAX_PROBES, 60, TimeUnit.SECONDS,
+			new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "eExplorer file probe");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
+	static {
+		PROBES.allowCoreThreadTimeOut(true);
+	}
+
+	// path -> time until which it is considered unreachable
+	private static final Map<File, Long> unreachable = new HashMap<File, Long>();
+
+	/**
+	 * Returns whether the file or one of its ancestors timed out recently.
+	 * Only compares paths, does not access the file system.
+	 */
+	public static boolean isUnreachable(File file) {
+		long now = System.currentTimeMillis();
+		synchronized (unreachable) {
+			for (File current = file; current != null; current = current.getParentFile()) {
+				Long until = unreachable.get(current);
+				if (until == null)
+					continue;
+				if (until.longValue() > now)
+					return true;
+				unreachable.remove(current);
+			}
+		}
+		return false;
+	}
+
+	public static void clearUnreachable() {
+		synchronized (unreachable) {
+			unreachable.clear();
+		}
+	}
+
+	/**
+	 * Probes the given file in the background and passes the target to the
+	 * callback. The callback is not called if the probe times out or fails.
+	 */
+	public static void probe(final File file, final boolean fileMode, final Callback callback) {
+		Job job = new Job("Probe " + file) {
+			@Override
+			protected IStatus run(IProgressMonitor monitor) {
+				final AtomicBoolean started = new AtomicBoolean();
+				Future<File> future = PROBES.submit(new Callable<File>() {
+					@Override
+					public File call() throws Exception {
+						started.set(true);
+						return resolve(file, fileMode);
+					}
+				});
+				try {
+					callback.probed(future.get(TIMEOUT, TimeUnit.MILLISECONDS));
+				} catch (TimeoutException e) {
+					// the probe thread stays blocked until the system gives up
+					future.cancel(false);
+					if (started.get()) {
+						markUnreachable(file);
+						LogUtil.info("Timeout while accessing " + file);
+					} else {
+						LogUtil.info("All probe threads blocked, not accessing " + file);
+					}
+				} catch (InterruptedException e) {
+					future.cancel(true);
+					Thread.currentThread().interrupt();
+				} catch (ExecutionException e) {
+					LogUtil.error("Cannot access " + file, e.getCause());
+				}
+				return Status.OK_STATUS;
+			}
+		};
+		job.setSystem(true);
+		job.schedule();
+	}
+
+	static File resolve(File file, boolean fileMode) {
+		File target = file;
+		if (!fileMode && !target.isDirectory())
+			target = target.getParentFile();
+		if (target == null || !PathExistenceCache.getDefault().exists(target))
+			return null;
+		return target;
+	}
+
+	/**
+	 * Marks the volume of the file unreachable, e.g. <code>Z:\</code> or
+	 * <code>\\server\share\</code>. On systems with a single root, the mount
+	 * point of the file is marked if the mount table can be read, otherwise
+	 * only the file itself.
+	 */
+	private static void markUnreachable(File file) {
+		File key = file;
+		try {
+			Path root = file.toPath().getRoot();
+			if (root != null && root.toString().length() > 1)
+				key = root.toFile();
+			else {
+				File mountPoint = getMountPoint(file);
+				if (mountPoint != null)
+					key = mountPoint;
+			}
+		} catch (InvalidPathException e) {
+			// keep the file
+		}
+		synchronized (unreachable) {
+			unreachable.put(key, Long.valueOf(System.currentTimeMillis() + UNREACHABLE_TTL));
+		}
+	}
+
+	/**
+	 * Returns the deepest mount point of <code>/proc/mounts</code> containing
+	 * the file, <code>null</code> if unknown or if it is the root. Reading the
+	 * mount table does not access the mounted file systems, so it does not
+	 * block on a dead mount.
+	 */
+	static File getMountPoint(File file) {
+		File mounts = new File("/proc/mounts");
+		if (!mounts.isFile())
+			return null;
+		String path = file.getAbsolutePath();
+		String best = null;
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(mounts),
+				StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] fields = line.split(" ");
+				if (fields.length < 2)
+					continue;
+				String mountPoint = unescape(fields[1]);
+				if (isAncestor(mountPoint, path) && (best == null || mountPoint.length() > best.length()))
+					best = mountPoint;
+			}
+		} catch (IOException e) {
+			return null;
+		}
+		return best == null || best.equals("/") ? null : new File(best);
+	}
+
+	private static boolean isAncestor(String mountPoint, String path) {
+		return path.equals(mountPoint) || path.startsWith(mountPoint.endsWith("/") ? mountPoint : mountPoint + "/");
+	}
+
+	/**
+	 * Decodes the octal escapes of the mount table, e.g. <code>\040</code>
+	 * for a space.
+	 */
+	private static String unescape(String field) {
+		if (field.indexOf('\\') < 0)
+			return field;
+		StringBuilder builder = new StringBuilder(field.length());
+		for (int i = 0; i < field.length(); i++) {
+			char c = field.charAt(i);
+			if (c == '\\' && i + 3 < field.length() && isOctal(field, i + 1)) {
+				builder.append((char) Integer.parseInt(field.substring(i + 1, i + 4), 8));
+				i += 3;
+			} else {
+				builder.append(c);
+			}
+		}
+		return builder.toString();
+	}
+
+	private static boolean isOctal(String field, int start) {
+		for (int i = start; i < start + 3; i++) {
+			char c = field.charAt(i);
+			if (c < '0' || c > '7')
+				return false;
+		}
+		return true;
+	}
+}
@@ -0,0 +1,507 @@
+package com.github.culmat.eexplorer.views;
+
+import java.io.File;
+import java.text.DateFormat;
+import java.text.NumberFormat;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.events.DisposeEvent;
+import org.eclipse.swt.events.DisposeListener;
+import org.eclipse.swt.program.Program;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Control;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Event;
+import org.eclipse.swt.widgets.Listener;
+import org.eclipse.swt.widgets.Table;
+import org.eclipse.swt.widgets.TableColumn;
+import org.eclipse.swt.widgets.TableItem;
+
+import nu.bibi.breadcrumb.files.DirectoryCache;
+import nu.bibi.breadcrumb.files.DirectorySizes;
+import nu.bibi.breadcrumb.files.DirectoryWatcher;
+import nu.bibi.breadcrumb.files.FileContentProvider;
+import nu.bibi.breadcrumb.files.FileEntry;
+import nu.bibi.breadcrumb.files.FileViewerComparator;
+import nu.bibi.breadcrumb.files.ISizeListener;
+import nu.bibi.breadcrumb.files.ImageFileRegistry;
+
+/**
+ * Lists the content of a folder in a virtual table with name, size, modified
+ * and type columns, a lightweight alternative to the browser. The folder is
+ * listed in a background job by a {@link FileContentProvider}. The table only
+ * creates the rows that are shown, and rows are labeled and sorted from the
+ * attributes the {@link FileEntry} snapshots read with the listing, so a
+ * folder with a hundred thousand entries costs neither widgets nor system
+ * calls per row.
+ * <p>
+ * With {@link #setShowSizes(boolean)}, the size column shows the total of
+ * the subfolders, computed by {@link DirectorySizes} and updated while they
+ * are computed.
+ * </p>
+ * <p>
+ * The last {@link #WARM_LISTINGS} listings are kept in memory: going back to
+ * one of these folders shows it at once, then a background job lists it again,
+ * from the {@link DirectoryCache} while it is valid, and only shows the new
+ * listing if a name, size or modification time changed. The modification
+ * time of the folder is not enough, as it does not change with the content of
+ * its files.
+ * </p>
+ */
+public class FolderTable {
+
+	public static interface FolderListener {
+		/**
+		 * Called from the display thread when another folder is shown.
+		 */
+		void changed(File folder);
+	}
+
+	private static final int NAME = 0;
+	private static final int SIZE = 1;
+	private static final int MODIFIED = 2;
+	private static final int TYPE = 3;
+
+	public static final int WARM_LISTINGS = 10;
+
+	private static final Comparator<File> FOLDERS_FIRST = new Comparator<File>() {
+		@Override
+		public int compare(File f1, File f2) {
+			return compareFolders(f1, f2);
+		}
+	};
+
+	// a listing, sorted by the given column
+	private static class Listing {
+		final File[] files;
+		final int column;
+		final boolean ascending;
+
+		Listing(File[] files, int column, boolean ascending) {
+			this.files = files;
+			this.column = column;
+			this.ascending = ascending;
+		}
+	}
+
+	private final Display display;
+	private final Table table;
+	private final ImageFileRegistry registry;
+	private final FileContentProvider contentProvider = new FileContentProvider();
+	private final DateFormat dateFormat = DateFormat.getDateTimeInstance(DateFormat.SHORT, DateFormat.SHORT);
+	private final NumberFormat numberFormat = NumberFormat.getIntegerInstance();
+	private FolderListener listener;
+
+	private File folder;
+	private File[] files = new File[0];
+	private int sortColumn = NAME;
+	private boolean ascending = true;
+	private boolean showSizes;
+	private Job job;
+	private int requests;
+
+	// the recent listings, in access order (display thread only)
+	private final Map<File, Listing> warm = new LinkedHashMap<File, Listing>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<File, Listing> eldest) {
+			return size() > WARM_LISTINGS;
+		}
+	};
+
+	private final ImageFileRegistry.IImageListener imageListener = new ImageFileRegistry.IImageListener() {
+		@Override
+		public void imagesResolved(String[] extensions) {
+			if (!table.isDisposed())
+				table.clearAll();
+		}
+	};
+
+	private final ISizeListener sizeListener = new ISizeListener() {
+		@Override
+		public void sizesChanged(final File[] directories) {
+			display.asyncExec(new Runnable() {
+				@Override
+				public void run() {
+					if (table.isDisposed() || !showSizes || folder == null)
+						return;
+					for (File directory : directories) {
+						if (folder.equals(directory.getParentFile())) {
+							table.clearAll();
+							return;
+						}
+					}
+				}
+			});
+		}
+	};
+
+	private final DirectoryWatcher.Listener watcherListener = new DirectoryWatcher.Listener() {
+		@Override
+		public void directoryChanged(final File directory) {
+			display.asyncExec(new Runnable() {
+				@Override
+				public void run() {
+					if (table.isDisposed())
+						return;
+					warm.remove(directory);
+					if (directory.equals(folder)) {
+						DirectoryCache.getDefault().invalidate(directory);
+						list(directory, null);
+					}
+				}
+			});
+		}
+	};
+
+	public FolderTable(Composite parent) {
+		display = parent.getDisplay();
+		registry = new ImageFileRegistry(display);
+		registry.addImageListener(imageListener);
+		table = new Table(parent, SWT.VIRTUAL | SWT.MULTI | SWT.FULL_SELECTION);
+		table.setHeaderVisible(true);
+		createColumn("Name", SWT.LEFT, 250, NAME);
+		createColumn("Size", SWT.RIGHT, 80, SIZE);
+		createColumn("Date modified", SWT.LEFT, 130, MODIFIED);
+		createColumn("Type", SWT.LEFT, 100, TYPE);
+		table.setSortColumn(table.getColumn(NAME));
+		table.setSortDirection(SWT.UP);
+
+		table.addListener(SWT.SetData, new Listener() {
+			@Override
+			public void handleEvent(Event event) {
+				TableItem item = (TableItem) event.item;
+				if (event.index >= files.length)
+					return;
+				File file = files[event.index];
+				item.setData(file);
+				item.setImage(registry.get(file));
+				item.setText(new String[] { file.getName(), getSizeText(file), getModifiedText(file), getTypeText(file) });
+			}
+		});
+		table.addListener(SWT.DefaultSelection, new Listener() {
+			@Override
+			public void handleEvent(Event event) {
+				if (event.item == null)
+					return;
+				File file = (File) event.item.getData();
+				if (file == null)
+					return;
+				if (file.isDirectory())
+					setInput(file);
+				else
+					Program.launch(file.getAbsolutePath());
+			}
+		});
+		table.addDisposeListener(new DisposeListener() {
+			@Override
+			public void widgetDisposed(DisposeEvent e) {
+				DirectoryWatcher.getInstance().removeListener(watcherListener);
+				DirectorySizes.getDefault().removeSizeListener(sizeListener);
+				if (showSizes && folder != null)
+					DirectorySizes.getDefault().cancel(folder);
+				if (job != null)
+					job.cancel();
+				contentProvider.dispose();
+				registry.dispose();
+				warm.clear();
+			}
+		});
+		DirectoryWatcher.getInstance().addListener(watcherListener);
+		DirectorySizes.getDefault().addSizeListener(sizeListener);
+	}
+
+	private void createColumn(String text, int style, int width, final int index) {
+		TableColumn column = new TableColumn(table, style);
+		column.setText(text);
+		column.setWidth(width);
+		column.addListener(SWT.Selection, new Listener() {
+			@Override
+			public void handleEvent(Event event) {
+				sortBy(index);
+			}
+		});
+	}
+
+	public Control getControl() {
+		return table;
+	}
+
+	public void setFolderListener(FolderListener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * Returns the folder shown, <code>null</code> before the first listing
+	 * completed.
+	 */
+	public File getFolder() {
+		return folder;
+	}
+
+	public boolean isShowSizes() {
+		return showSizes;
+	}
+
+	/**
+	 * Shows the total size of the subfolders, computing them in the
+	 * background, or stops the computation.
+	 */
+	public void setShowSizes(boolean showSizes) {
+		if (this.showSizes == showSizes)
+			return;
+		this.showSizes = showSizes;
+		if (folder != null) {
+			if (showSizes)
+				DirectorySizes.getDefault().compute(folder);
+			else
+				DirectorySizes.getDefault().cancel(folder);
+		}
+		table.clearAll();
+	}
+
+	/**
+	 * Shows the given folder; for a file, shows its folder and selects it.
+	 */
+	public void setInput(File file) {
+		if (file.isDirectory() || file.getParentFile() == null)
+			list(file, null);
+		else
+			list(file.getParentFile(), file);
+	}
+
+	/**
+	 * Lists the folder in the background and shows it, unless another folder
+	 * has been requested in the meantime. A warm listing is shown at once and
+	 * only replaced if the new listing differs.
+	 */
+	private void list(final File directory, final File reveal) {
+		final int request = ++requests;
+		final int column = sortColumn;
+		final boolean up = ascending;
+		final boolean sizes = showSizes;
+		if (job != null)
+			job.cancel();
+		final Listing cached = warm.get(directory);
+		final File[] shown;
+		if (cached != null) {
+			shown = cached.files.clone();
+			if (cached.column != column || cached.ascending != up)
+				sort(shown, column, up, sizes);
+			show(directory, shown.clone(), reveal);
+		} else {
+			shown = null;
+		}
+		job = new Job("List " + directory) {
+			@Override
+			protected IStatus run(IProgressMonitor monitor) {
+				Object[] elements = contentProvider.getElements(directory);
+				if (monitor.isCanceled())
+					return Status.CANCEL_STATUS;
+				final File[] listed = new File[elements.length];
+				System.arraycopy(elements, 0, listed, 0, elements.length);
+				sort(listed, column, up, sizes);
+				final Listing listing = new Listing(listed.clone(), column, up);
+				final boolean same = shown != null && isSame(shown, listed);
+				display.asyncExec(new Runnable() {
+					@Override
+					public void run() {
+						if (table.isDisposed() || request != requests)
+							return;
+						warm.put(directory, listing);
+						if (same)
+							return;
+						if (column != sortColumn || up != ascending || sizes != showSizes)
+							sort(listed, sortColumn, ascending, showSizes);
+						show(directory, listed, reveal);
+					}
+				});
+				return Status.OK_STATUS;
+			}
+		};
+		job.setSystem(true);
+		job.schedule();
+	}
+
+	private void show(File directory, File[] listed, File reveal) {
+		boolean changed = !directory.equals(folder);
+		if (changed && showSizes) {
+			if (folder != null)
+				DirectorySizes.getDefault().cancel(folder);
+			DirectorySizes.getDefault().compute(directory);
+		}
+		Set<File> selected = changed ? new HashSet<File>() : getSelectedFiles();
+		if (reveal != null)
+			selected.add(reveal);
+		folder = directory;
+		files = listed;
+		table.setItemCount(files.length);
+		table.clearAll();
+		select(selected);
+		if (changed && selected.isEmpty())
+			table.setTopIndex(0);
+		if (changed && listener != null)
+			listener.changed(directory);
+	}
+
+	/**
+	 * Returns whether the listings have the same entries in the same order,
+	 * with the same attributes as read with the listings.
+	 */
+	private static boolean isSame(File[] files1, File[] files2) {
+		if (files1.length != files2.length)
+			return false;
+		for (int i = 0; i < files1.length; i++) {
+			File f1 = files1[i];
+			File f2 = files2[i];
+			if (!f1.equals(f2) || f1.isDirectory() != f2.isDirectory() || f1.length() != f2.length()
+					|| f1.lastModified() != f2.lastModified())
+				return false;
+		}
+		return true;
+	}
+
+	private void sortBy(int column) {
+		if (column == sortColumn) {
+			ascending = !ascending;
+		} else {
+			sortColumn = column;
+			ascending = true;
+		}
+		table.setSortColumn(table.getColumn(column));
+		table.setSortDirection(ascending ? SWT.UP : SWT.DOWN);
+		Set<File> selected = getSelectedFiles();
+		sort(files, sortColumn, ascending, showSizes);
+		table.clearAll();
+		select(selected);
+	}
+
+	private Set<File> getSelectedFiles() {
+		Set<File> selected = new HashSet<File>();
+		for (int index : table.getSelectionIndices()) {
+			if (index < files.length)
+				selected.add(files[index]);
+		}
+		return selected;
+	}
+
+	private void select(Set<File> selected) {
+		table.deselectAll();
+		if (selected.isEmpty())
+			return;
+		int[] indices = new int[selected.size()];
+		int count = 0;
+		for (int i = 0; i < files.length && count < indices.length; i++) {
+			if (selected.contains(files[i]))
+				indices[count++] = i;
+		}
+		table.select(Arrays.copyOf(indices, count));
+		table.showSelection();
+	}
+
+	/**
+	 * Sorts folders before files by name, then stable by the given column.
+	 * The keys come from the attributes read with the listing and, for the
+	 * size of the folders, from the computed totals.
+	 */
+	private static void sort(File[] files, int column, boolean up, boolean sizes) {
+		FileViewerComparator.BY_NAME.sort(null, files);
+		Comparator<File> comparator = null;
+		if (column == SIZE) {
+			// read the totals once, the computation keeps updating them
+			final Map<File, Long> keys = new HashMap<File, Long>(files.length * 2);
+			DirectorySizes directorySizes = DirectorySizes.getDefault();
+			for (File file : files) {
+				keys.put(file, sizes && file.isDirectory() ? directorySizes.getSize(file) : file.length());
+			}
+			comparator = new Comparator<File>() {
+				@Override
+				public int compare(File f1, File f2) {
+					int result = compareFolders(f1, f2);
+					return result != 0 ? result : keys.get(f1).compareTo(keys.get(f2));
+				}
+			};
+		} else if (column == MODIFIED) {
+			comparator = new Comparator<File>() {
+				@Override
+				public int compare(File f1, File f2) {
+					int result = compareFolders(f1, f2);
+					return result != 0 ? result : Long.compare(f1.lastModified(), f2.lastModified());
+				}
+			};
+		} else if (column == TYPE) {
+			comparator = new Comparator<File>() {
+				@Override
+				public int compare(File f1, File f2) {
+					int result = compareFolders(f1, f2);
+					if (result != 0)
+						return result;
+					String e1 = ImageFileRegistry.getExtension(f1);
+					String e2 = ImageFileRegistry.getExtension(f2);
+					if (e1 == null || e2 == null)
+						return e1 == null ? (e2 == null ? 0 : -1) : 1;
+					return e1.compareToIgnoreCase(e2);
+				}
+			};
+		}
+		if (comparator != null)
+			Arrays.sort(files, comparator);
+		if (!up) {
+			// descending within the folders and the files, folders stay first
+			reverse(files);
+			Arrays.sort(files, FOLDERS_FIRST);
+		}
+	}
+
+	private static int compareFolders(File f1, File f2) {
+		return Boolean.compare(!f1.isDirectory(), !f2.isDirectory());
+	}
+
+	private static void reverse(File[] files) {
+		for (int i = 0, j = files.length - 1; i < j; i++, j--) {
+			File file = files[i];
+			files[i] = files[j];
+			files[j] = file;
+		}
+	}
+
+	private String getSizeText(File file) {
+		if (file.isDirectory()) {
+			if (!showSizes)
+				return "";
+			long size = DirectorySizes.getDefault().getSize(file);
+			if (size >= 0)
+				return numberFormat.format((size + 1023) / 1024) + " KB";
+			return DirectorySizes.getDefault().isComputing(file) ? "..." : "";
+		}
+		return numberFormat.format((file.length() + 1023) / 1024) + " KB";
+	}
+
+	private String getModifiedText(File file) {
+		long modified = file.lastModified();
+		return modified == 0 ? "" : dateFormat.format(new Date(modified));
+	}
+
+	private static String getTypeText(File file) {
+		if (file.isDirectory())
+			return "File folder";
+		String extension = ImageFileRegistry.getExtension(file);
+		if (extension == null || extension.length() == 0)
+			return "File";
+		return extension.toUpperCase(Locale.ROOT) + " File";
+	}
+}
@@ -0,0 +1,136 @@
+package com.github.culmat.eexplorer.views;
+
+import java.io.File;
+import java.util.List;
+
+import org.eclipse.jface.dialogs.Dialog;
+import org.eclipse.jface.dialogs.IDialogConstants;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.events.KeyAdapter;
+import org.eclipse.swt.events.KeyEvent;
+import org.eclipse.swt.events.ModifyEvent;
+import org.eclipse.swt.events.ModifyListener;
+import org.eclipse.swt.events.SelectionAdapter;
+import org.eclipse.swt.events.SelectionEvent;
+import org.eclipse.swt.layout.GridData;
+import org.eclipse.swt.widgets.Button;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Control;
+import org.eclipse.swt.widgets.Label;
+import org.eclipse.swt.widgets.Shell;
+import org.eclipse.swt.widgets.Table;
+import org.eclipse.swt.widgets.TableItem;
+import org.eclipse.swt.widgets.Text;
+
+/**
+ * Lets the user type a part of a file or folder name and pick one of the best
+ * matches of the {@link WorkspaceIndex}. The index is built the first time the
+ * dialog is opened.
+ */
+public class GoToFolderDialog extends Dialog {
+
+	private static final int MAX_RESULTS = 50;
+	private static final int READY_POLL = 250;
+
+	private Text text;
+	private Table table;
+	private Label status;
+	private File selection;
+
+	// shows the matches once the index is built
+	private final Runnable poll = new Runnable() {
+		@Override
+		public void run() {
+			if (!table.isDisposed())
+				update();
+		}
+	};
+
+	public GoToFolderDialog(Shell parentShell) {
+		super(parentShell);
+		setShellStyle(getShellStyle() | SWT.RESIZE);
+	}
+
+	public File getSelection() {
+		return selection;
+	}
+
+	@Override
+	protected void configureShell(Shell shell) {
+		super.configureShell(shell);
+		shell.setText("Go to folder");
+	}
+
+	@Override
+	protected Control createDialogArea(Composite parent) {
+		Composite area = (Composite) super.createDialogArea(parent);
+		text = new Text(area, SWT.SINGLE | SWT.BORDER | SWT.SEARCH);
+		text.setMessage("folder or file name");
+		text.setLayoutData(new GridData(SWT.FILL, SWT.CENTER, true, false));
+		table = new Table(area, SWT.SINGLE | SWT.BORDER | SWT.FULL_SELECTION);
+		GridData data = new GridData(SWT.FILL, SWT.FILL, true, true);
+		data.widthHint = 600;
+		data.heightHint = 300;
+		table.setLayoutData(data);
+		status = new Label(area, SWT.NONE);
+		status.setLayoutData(new GridData(SWT.FILL, SWT.CENTER, true, false));
+
+		text.addModifyListener(new ModifyListener() {
+			@Override
+			public void modifyText(ModifyEvent e) {
+				update();
+			}
+		});
+		text.addKeyListener(new KeyAdapter() {
+			@Override
+			public void keyPressed(KeyEvent e) {
+				if (e.keyCode == SWT.ARROW_DOWN && table.getItemCount() > 0) {
+					table.setFocus();
+					table.setSelection(0);
+				}
+			}
+		});
+		table.addSelectionListener(new SelectionAdapter() {
+			@Override
+			public void widgetDefaultSelected(SelectionEvent e) {
+				okPressed();
+			}
+		});
+		WorkspaceIndex.getDefault().start();
+		update();
+		return area;
+	}
+
+	private void update() {
+		table.removeAll();
+		WorkspaceIndex index = WorkspaceIndex.getDefault();
+		if (!index.isReady()) {
+			status.setText("Indexing workspace files...");
+			table.getDisplay().timerExec(READY_POLL, poll);
+			return;
+		}
+		long start = System.nanoTime();
+		List<File> files = index.search(text.getText(), MAX_RESULTS);
+		long millis = (System.nanoTime() - start) / 1000000;
+		for (File file : files) {
+			TableItem item = new TableItem(table, SWT.NONE);
+			item.setText(file.getName() + " - " + file.getParent());
+			item.setData(file);
+		}
+		if (files.size() > 0)
+			table.setSelection(0);
+		status.setText(files.size() + " matches in " + millis + " ms");
+		Button ok = getButton(IDialogConstants.OK_ID);
+		if (ok != null)
+			ok.setEnabled(files.size() > 0);
+	}
+
+	@Override
+	protected void okPressed() {
+		TableItem[] items = table.getSelection();
+		if (items.length == 0)
+			return;
+		selection = (File) items[0].getData();
+		super.okPressed();
+	}
+}
@@ -0,0 +1,104 @@
+package com.github.culmat.eexplorer.views;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * The folders visited in the Explorer view, kept by the view itself so that
+ * they survive the widget showing them, e.g. when a hidden view releases its
+ * browser. The widgets report the folder they show with
+ * {@link #visit(File)}; the listeners are notified once per change of the
+ * current folder. Must be used from the UI thread.
+ */
+public class NavigationHistory {
+
+	public static final int MAX_SIZE = 50;
+
+	public static interface Listener {
+		/**
+		 * Called when the current folder changed.
+		 */
+		void locationChanged(File location);
+	}
+
+	private final List<Listener> listeners = new ArrayList<Listener>();
+
+	private final Deque<File> backStack = new ArrayDeque<File>();
+	private final Deque<File> forwardStack = new ArrayDeque<File>();
+	private File current;
+
+	public void addListener(Listener listener) {
+		listeners.add(listener);
+	}
+
+	public void removeListener(Listener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Returns the folder shown, <code>null</code> before the first visit.
+	 */
+	public File getCurrent() {
+		return current;
+	}
+
+	/**
+	 * Records that the given folder is shown. Visiting the current folder
+	 * again does nothing; visiting another one drops the forward history.
+	 */
+	public void visit(File location) {
+		if (location.equals(current))
+			return;
+		if (current != null) {
+			backStack.push(current);
+			if (backStack.size() > MAX_SIZE)
+				backStack.removeLast();
+		}
+		forwardStack.clear();
+		current = location;
+		fireLocationChanged();
+	}
+
+	public boolean canGoBack() {
+		return !backStack.isEmpty();
+	}
+
+	public boolean canGoForward() {
+		return !forwardStack.isEmpty();
+	}
+
+	/**
+	 * Steps back and returns the folder to show, <code>null</code> if there
+	 * is none.
+	 */
+	public File back() {
+		if (backStack.isEmpty())
+			return null;
+		forwardStack.push(current);
+		current = backStack.pop();
+		fireLocationChanged();
+		return current;
+	}
+
+	/**
+	 * Steps forward and returns the folder to show, <code>null</code> if
+	 * there is none.
+	 */
+	public File forward() {
+		if (forwardStack.isEmpty())
+			return null;
+		backStack.push(current);
+		current = forwardStack.pop();
+		fireLocationChanged();
+		return current;
+	}
+
+	private void fireLocationChanged() {
+		for (Listener listener : new ArrayList<Listener>(listeners)) {
+			listener.locationChanged(current);
+		}
+	}
+}
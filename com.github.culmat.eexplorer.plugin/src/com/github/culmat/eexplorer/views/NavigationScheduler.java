@@ -0,0 +1,70 @@
+package com.github.culmat.eexplorer.views;
+
+import org.eclipse.swt.widgets.Display;
+
+/**
+ * Coalesces bursts of navigation requests, e.g. while the user holds an arrow
+ * key in the Package Explorer. Only the latest request is run, once no other
+ * request arrived during the quiet period. Must be used from the UI thread.
+ */
+public class NavigationScheduler {
+
+	public static final int DEFAULT_QUIET_PERIOD = 250;
+
+	private final Display display;
+	private int quietPeriod;
+	private Runnable pending;
+
+	private final Runnable timer = new Runnable() {
+		@Override
+		public void run() {
+			Runnable navigation = pending;
+			pending = null;
+			if (navigation != null) {
+				navigation.run();
+			}
+		}
+	};
+
+	public NavigationScheduler(Display display, int quietPeriod) {
+		this.display = display;
+		this.quietPeriod = quietPeriod;
+	}
+
+	/**
+	 * Schedules the given navigation, replacing any pending one. The quiet
+	 * period starts again.
+	 */
+	public void schedule(Runnable navigation) {
+		pending = navigation;
+		if (display.isDisposed())
+			return;
+		display.timerExec(-1, timer);
+		if (quietPeriod <= 0) {
+			timer.run();
+		} else {
+			display.timerExec(quietPeriod, timer);
+		}
+	}
+
+	/**
+	 * Drops the pending navigation, if any.
+	 */
+	public void cancel() {
+		pending = null;
+		if (!display.isDisposed())
+			display.timerExec(-1, timer);
+	}
+
+	public boolean isPending() {
+		return pending != null;
+	}
+
+	public int getQuietPeriod() {
+		return quietPeriod;
+	}
+
+	public void setQuietPeriod(int quietPeriod) {
+		this.quietPeriod = quietPeriod;
+	}
+}
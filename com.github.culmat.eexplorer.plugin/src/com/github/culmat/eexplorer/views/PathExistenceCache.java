@@ -0,0 +1,170 @@
+package com.github.culmat.eexplorer.views;
+
+import java.io.File;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Caches <code>File.exists()</code> answers in a trie of path segments. Each
+ * node keeps its answer for {@link #TTL} milliseconds. A missing ancestor
+ * answers for all its descendants and an existing path marks its ancestors
+ * as existing, so repeated detections do not touch the disk. The cache is
+ * thread safe; it is invalidated from the workspace and directory watcher
+ * listeners installed by the activator.
+ */
+public class PathExistenceCache {
+
+	public static final long TTL = 30000;
+	public static final int MAX_NODES = 10000;
+
+	private static final boolean IGNORE_CASE = File.separatorChar == '\\';
+
+	private static final PathExistenceCache DEFAULT = new PathExistenceCache();
+
+	public static PathExistenceCache getDefault() {
+		return DEFAULT;
+	}
+
+	private static class Node {
+		Map<String, Node> children;
+		boolean exists;
+		long expires;
+
+		Node child(String segment, boolean create) {
+			if (children == null) {
+				if (!create)
+					return null;
+				children = new HashMap<String, Node>();
+			}
+			Node child = children.get(segment);
+			if (child == null && create) {
+				child = new Node();
+				children.put(segment, child);
+			}
+			return child;
+		}
+	}
+
+	private final Node root = new Node();
+	private int size;
+
+	/**
+	 * Returns whether the given file exists, from the cache when possible.
+	 */
+	public boolean exists(File file) {
+		List<String> segments = segments(file);
+		if (segments == null)
+			return file.exists();
+		long now = System.currentTimeMillis();
+		synchronized (this) {
+			Node node = root;
+			for (String segment : segments) {
+				node = node.child(segment, false);
+				if (node == null)
+					break;
+				if (node.expires > now && !node.exists)
+					return false;
+			}
+			if (node != null && node.expires > now)
+				return node.exists;
+		}
+
+		boolean exists = file.exists();
+		put(segments, exists, now + TTL);
+		return exists;
+	}
+
+	/**
+	 * Forgets the given file and all its descendants.
+	 */
+	public void invalidate(File file) {
+		List<String> segments = segments(file);
+		synchronized (this) {
+			if (segments == null || segments.isEmpty()) {
+				clear();
+				return;
+			}
+			Node node = root;
+			for (int i = 0; i < segments.size() - 1 && node != null; i++) {
+				node = node.child(segments.get(i), false);
+			}
+			if (node != null && node.children != null)
+				node.children.remove(segments.get(segments.size() - 1));
+		}
+	}
+
+	/**
+	 * Forgets the descendants of the given directory, e.g. when its content
+	 * changed, but keeps the directory itself.
+	 */
+	public synchronized void invalidateChildren(File directory) {
+		List<String> segments = segments(directory);
+		if (segments == null) {
+			clear();
+			return;
+		}
+		Node node = root;
+		for (int i = 0; i < segments.size() && node != null; i++) {
+			node = node.child(segments.get(i), false);
+		}
+		if (node != null)
+			node.children = null;
+	}
+
+	public synchronized void clear() {
+		root.children = null;
+		size = 0;
+	}
+
+	private synchronized void put(List<String> segments, boolean exists, long expires) {
+		if (size > MAX_NODES)
+			clear();
+		Node node = root;
+		int last = segments.size() - 1;
+		for (int i = 0; i <= last; i++) {
+			Node child = node.child(segments.get(i), false);
+			if (child == null) {
+				child = node.child(segments.get(i), true);
+				size++;
+			}
+			node = child;
+			if (i == last) {
+				node.exists = exists;
+				node.expires = expires;
+			} else if (exists) {
+				// the ancestors of an existing file exist
+				node.exists = true;
+				node.expires = expires;
+			}
+		}
+	}
+
+	/**
+	 * Splits the absolute path in its root and its names, <code>null</code>
+	 * if the path is invalid.
+	 */
+	private static List<String> segments(File file) {
+		Path path;
+		try {
+			path = file.toPath().toAbsolutePath().normalize();
+		} catch (InvalidPathException e) {
+			return null;
+		}
+		List<String> segments = new ArrayList<String>(path.getNameCount() + 1);
+		if (path.getRoot() != null)
+			segments.add(key(path.getRoot().toString()));
+		for (Path name : path) {
+			segments.add(key(name.toString()));
+		}
+		return segments;
+	}
+
+	private static String key(String segment) {
+		return IGNORE_CASE ? segment.toLowerCase(Locale.ROOT) : segment;
+	}
+}
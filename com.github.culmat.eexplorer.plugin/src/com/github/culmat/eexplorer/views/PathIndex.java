@@ -0,0 +1,426 @@
+package com.github.culmat.eexplorer.views;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * An in-memory tree of file and folder paths with fuzzy name search.
+ * <p>
+ * Entries are stored in parallel arrays (parent, first child, next sibling,
+ * name offset) and the names in two character buffers, as typed and in lower
+ * case, so a million paths cost a few tens of megabytes. Each entry also
+ * keeps a 64-bit mask of the characters of its lower case name: a search
+ * first skips the entries whose mask lacks a character of the query, then
+ * scores the remaining names as subsequences of the query, in parallel
+ * slices of {@link #SLICE} entries. Removed entries are only marked as such,
+ * until they make up half of the entries: the arrays are then compacted, so
+ * the entry indexes returned by {@link #add(int, String, boolean)} are only
+ * valid until the next removal. The index is thread safe.
+ * </p>
+ */
+public class PathIndex {
+
+	private static final boolean IGNORE_CASE = File.separatorChar == '\\';
+	private static final int DIRECTORY_BONUS = 50;
+	static final int SLICE = 65536;
+	static final int MIN_COMPACT = 1024;
+
+	private int size;
+	private int[] parents = new int[1024];
+	private int[] firstChildren = new int[1024];
+	private int[] nextSiblings = new int[1024];
+	private int[] offsets = new int[1025];
+	private long[] masks = new long[1024];
+	private char[] chars = new char[16384];
+	private char[] lowerChars = new char[16384];
+	private final BitSet directories = new BitSet();
+	private final BitSet removed = new BitSet();
+	private final List<Integer> roots = new ArrayList<Integer>();
+
+	public synchronized int size() {
+		return size - removed.cardinality();
+	}
+
+	/**
+	 * Adds a root directory, given by its absolute path.
+	 * 
+	 * @return the index of the root entry.
+	 */
+	public synchronized int addRoot(File root) {
+		int index = find(root);
+		if (index >= 0)
+			return index;
+		index = append(-1, root.getAbsolutePath(), true);
+		roots.add(Integer.valueOf(index));
+		return index;
+	}
+
+	/**
+	 * Adds an entry under the given parent entry, without checking for
+	 * duplicates. Used while walking a directory tree.
+	 * 
+	 * @return the index of the new entry.
+	 */
+	public synchronized int add(int parent, String name, boolean directory) {
+		return append(parent, name, directory);
+	}
+
+	/**
+	 * Adds the given file if its parent is indexed and it is not indexed yet.
+	 */
+	public synchronized void add(File file, boolean directory) {
+		File parentFile = file.getParentFile();
+		int parent = parentFile == null ? -1 : find(parentFile);
+		if (parent < 0 || child(parent, file.getName()) >= 0)
+			return;
+		append(parent, file.getName(), directory);
+	}
+
+	/**
+	 * Marks the given file and its descendants as removed.
+	 */
+	public synchronized void remove(File file) {
+		int index = find(file);
+		if (index < 0)
+			return;
+		markRemoved(index);
+		int count = removed.cardinality();
+		if (count >= MIN_COMPACT && count * 2 >= size)
+			compact();
+	}
+
+	public synchronized boolean contains(File file) {
+		return find(file) >= 0;
+	}
+
+	/**
+	 * Returns the best matches for the given query, folders first when the
+	 * scores are otherwise equal.
+	 * 
+	 * @param query
+	 *            the characters to find, in order, in the entry names.
+	 * @param max
+	 *            the maximum number of results.
+	 */
+	public List<File> search(String query, int max) {
+		String lower = query.trim().toLowerCase(Locale.ROOT);
+		List<File> result = new ArrayList<File>();
+		if (lower.length() == 0 || max <= 0)
+			return result;
+		synchronized (this) {
+			Matches matches = ForkJoinPool.commonPool().invoke(new Search(lower.toCharArray(), mask(lower), max, 0, size));
+			for (int i = 0; i < matches.count; i++) {
+				result.add(getFile(matches.entries[i]));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * The best entries of a search, sorted by decreasing score.
+	 */
+	private static class Matches {
+		final int[] entries;
+		final int[] scores;
+		int count;
+
+		Matches(int max) {
+			entries = new int[max];
+			scores = new int[max];
+		}
+
+		void add(int entry, int score) {
+			int max = entries.length;
+			if (count == max && score <= scores[max - 1])
+				return;
+			int position = count < max ? count++ : max - 1;
+			while (position > 0 && scores[position - 1] < score) {
+				scores[position] = scores[position - 1];
+				entries[position] = entries[position - 1];
+				position--;
+			}
+			scores[position] = score;
+			entries[position] = entry;
+		}
+
+		Matches merge(Matches other) {
+			for (int i = 0; i < other.count; i++) {
+				add(other.entries[i], other.scores[i]);
+			}
+			return this;
+		}
+	}
+
+	/**
+	 * Searches a range of entries, splitting it in slices run in parallel.
+	 * Runs while the caller holds the lock of the index.
+	 */
+	private class Search extends RecursiveTask<Matches> {
+		private static final long serialVersionUID = 1L;
+
+		private final char[] query;
+		private final long mask;
+		private final int max;
+		private final int from;
+		private final int to;
+
+		Search(char[] query, long mask, int max, int from, int to) {
+			this.query = query;
+			this.mask = mask;
+			this.max = max;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected Matches compute() {
+			if (to - from > SLICE) {
+				int middle = (from + to) >>> 1;
+				Search left = new Search(query, mask, max, from, middle);
+				left.fork();
+				Matches right = new Search(query, mask, max, middle, to).compute();
+				return right.merge(left.join());
+			}
+			Matches matches = new Matches(max);
+			int best = maxScore(query.length);
+			for (int i = from; i < to; i++) {
+				if ((masks[i] & mask) != mask || parents[i] < 0 || removed.get(i))
+					continue;
+				int bonus = directories.get(i) ? DIRECTORY_BONUS : 0;
+				// skip the names that cannot enter the full list
+				if (matches.count == max
+						&& best - (offsets[i + 1] - offsets[i]) + bonus <= matches.scores[max - 1])
+					continue;
+				int score = score(i, query);
+				if (score > 0)
+					matches.add(i, score + bonus);
+			}
+			return matches;
+		}
+	}
+
+	/**
+	 * Returns the file of the given entry.
+	 */
+	synchronized File getFile(int index) {
+		if (parents[index] < 0)
+			return new File(getName(index));
+		return new File(getFile(parents[index]), getName(index));
+	}
+
+	private String getName(int index) {
+		return new String(chars, offsets[index], offsets[index + 1] - offsets[index]);
+	}
+
+	public synchronized boolean isDirectory(int index) {
+		return directories.get(index);
+	}
+
+	private int append(int parent, String name, boolean directory) {
+		if (size == parents.length) {
+			int capacity = size * 2;
+			parents = Arrays.copyOf(parents, capacity);
+			firstChildren = Arrays.copyOf(firstChildren, capacity);
+			nextSiblings = Arrays.copyOf(nextSiblings, capacity);
+			offsets = Arrays.copyOf(offsets, capacity + 1);
+			masks = Arrays.copyOf(masks, capacity);
+		}
+		int offset = offsets[size];
+		int end = offset + name.length();
+		if (end > chars.length) {
+			int capacity = Math.max(end, chars.length * 2);
+			chars = Arrays.copyOf(chars, capacity);
+			lowerChars = Arrays.copyOf(lowerChars, capacity);
+		}
+		String lower = name.toLowerCase(Locale.ROOT);
+		if (lower.length() != name.length())
+			lower = name;
+		name.getChars(0, name.length(), chars, offset);
+		lower.getChars(0, name.length(), lowerChars, offset);
+		int index = size++;
+		offsets[size] = end;
+		parents[index] = parent;
+		firstChildren[index] = -1;
+		masks[index] = mask(lower);
+		directories.set(index, directory);
+		if (parent >= 0) {
+			nextSiblings[index] = firstChildren[parent];
+			firstChildren[parent] = index;
+		} else {
+			nextSiblings[index] = -1;
+		}
+		return index;
+	}
+
+	private void markRemoved(int index) {
+		removed.set(index);
+		for (int child = firstChildren[index]; child >= 0; child = nextSiblings[child]) {
+			markRemoved(child);
+		}
+	}
+
+	/**
+	 * Drops the removed entries and renumbers the others, keeping the order
+	 * of the entries.
+	 */
+	private void compact() {
+		int[] map = new int[size];
+		int count = 0;
+		int length = 0;
+		for (int i = 0; i < size; i++) {
+			if (removed.get(i)) {
+				map[i] = -1;
+			} else {
+				map[i] = count++;
+				length += offsets[i + 1] - offsets[i];
+			}
+		}
+		int capacity = Math.max(1024, count * 2);
+		int[] newParents = new int[capacity];
+		int[] newFirstChildren = new int[capacity];
+		int[] newNextSiblings = new int[capacity];
+		int[] newOffsets = new int[capacity + 1];
+		long[] newMasks = new long[capacity];
+		char[] newChars = new char[Math.max(16384, length * 2)];
+		char[] newLowerChars = new char[newChars.length];
+		BitSet newDirectories = new BitSet();
+		int offset = 0;
+		for (int i = 0; i < size; i++) {
+			int index = map[i];
+			if (index < 0)
+				continue;
+			// the parents precede their children and are not removed
+			int parent = parents[i] < 0 ? -1 : map[parents[i]];
+			int nameLength = offsets[i + 1] - offsets[i];
+			System.arraycopy(chars, offsets[i], newChars, offset, nameLength);
+			System.arraycopy(lowerChars, offsets[i], newLowerChars, offset, nameLength);
+			offset += nameLength;
+			newOffsets[index + 1] = offset;
+			newParents[index] = parent;
+			newFirstChildren[index] = -1;
+			newMasks[index] = masks[i];
+			newDirectories.set(index, directories.get(i));
+			if (parent >= 0) {
+				newNextSiblings[index] = newFirstChildren[parent];
+				newFirstChildren[parent] = index;
+			} else {
+				newNextSiblings[index] = -1;
+			}
+		}
+		List<Integer> newRoots = new ArrayList<Integer>();
+		for (Integer root : roots) {
+			int index = map[root.intValue()];
+			if (index >= 0)
+				newRoots.add(Integer.valueOf(index));
+		}
+		size = count;
+		parents = newParents;
+		firstChildren = newFirstChildren;
+		nextSiblings = newNextSiblings;
+		offsets = newOffsets;
+		masks = newMasks;
+		chars = newChars;
+		lowerChars = newLowerChars;
+		directories.clear();
+		directories.or(newDirectories);
+		removed.clear();
+		roots.clear();
+		roots.addAll(newRoots);
+	}
+
+	/**
+	 * Finds the entry of the given file, -1 if not indexed.
+	 */
+	private int find(File file) {
+		String path = file.getAbsolutePath();
+		for (Integer root : roots) {
+			int index = root.intValue();
+			String rootPath = getName(index);
+			if (!path.regionMatches(IGNORE_CASE, 0, rootPath, 0, rootPath.length()))
+				continue;
+			if (path.length() == rootPath.length())
+				return removed.get(index) ? -1 : index;
+			if (path.charAt(rootPath.length()) != File.separatorChar)
+				continue;
+			for (String name : path.substring(rootPath.length() + 1).split("\\" + File.separatorChar)) {
+				if (name.length() == 0)
+					continue;
+				index = child(index, name);
+				if (index < 0)
+					break;
+			}
+			if (index >= 0)
+				return index;
+		}
+		return -1;
+	}
+
+	private int child(int parent, String name) {
+		for (int child = firstChildren[parent]; child >= 0; child = nextSiblings[child]) {
+			if (!removed.get(child) && offsets[child + 1] - offsets[child] == name.length()
+					&& getName(child).regionMatches(IGNORE_CASE, 0, name, 0, name.length()))
+				return child;
+		}
+		return -1;
+	}
+
+	/**
+	 * Scores the name against the lower case query: 0 if the query is not a
+	 * subsequence of the name, higher for prefixes, consecutive characters
+	 * and matches at word starts, lower for long names.
+	 */
+	private int score(int index, char[] query) {
+		int start = offsets[index];
+		int end = offsets[index + 1];
+		int score = 100;
+		int j = 0;
+		int last = -2;
+		for (int i = start; i < end && j < query.length; i++) {
+			if (lowerChars[i] != query[j])
+				continue;
+			if (i == last + 1)
+				score += 10;
+			if (i == start)
+				score += 30;
+			else if (isWordStart(chars[i - 1], chars[i]))
+				score += 15;
+			last = i;
+			j++;
+		}
+		if (j < query.length)
+			return 0;
+		return Math.max(1, score - (end - start));
+	}
+
+	/**
+	 * Returns the highest score of a name of length 0, see
+	 * {@link #score(int, char[])}.
+	 */
+	private static int maxScore(int queryLength) {
+		return 100 + 30 + 25 * queryLength;
+	}
+
+	private static boolean isWordStart(char previous, char c) {
+		return !Character.isLetterOrDigit(previous) || (Character.isUpperCase(c) && Character.isLowerCase(previous));
+	}
+
+	static long mask(String lower) {
+		long mask = 0;
+		for (int i = 0; i < lower.length(); i++) {
+			char c = lower.charAt(i);
+			if (c >= 'a' && c <= 'z')
+				mask |= 1L << (c - 'a');
+			else if (c >= '0' && c <= '9')
+				mask |= 1L << (26 + c - '0');
+			else
+				mask |= 1L << (36 + c % 28);
+		}
+		return mask;
+	}
+}
@@ -0,0 +1,112 @@
+package com.github.culmat.eexplorer.views;
+
+import static com.github.culmat.eexplorer.views.FileDetector.detect;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.IResourceDeltaVisitor;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IAdaptable;
+import org.eclipse.core.runtime.IPath;
+
+import com.github.culmat.eexplorer.LogUtil;
+
+/**
+ * Maps selected model objects (JDT elements, EGit repository nodes, ...) to
+ * files. Results are cached with weak keys, so selecting the same element
+ * again neither adapts it nor runs the {@link FileDetector}. Misses are only
+ * kept for {@link #MISS_TTL} milliseconds, since the {@link FileDetector} may
+ * find files outside of the workspace, created later without any resource
+ * delta. The cache is cleared when resources are added, removed, moved or when
+ * a project is opened or closed.
+ */
+public class SelectionResolver implements IResourceChangeListener {
+
+	private static final int STRUCTURAL_FLAGS = IResourceDelta.MOVED_FROM | IResourceDelta.MOVED_TO
+			| IResourceDelta.OPEN | IResourceDelta.REPLACED | IResourceDelta.DESCRIPTION;
+
+	public static final long MISS_TTL = PathExistenceCache.TTL;
+
+	private final Map<Object, File> cache = Collections.synchronizedMap(new WeakHashMap<Object, File>());
+
+	// elements without file -> time until which the miss is kept
+	private final Map<Object, Long> misses = Collections.synchronizedMap(new WeakHashMap<Object, Long>());
+
+	public SelectionResolver() {
+		ResourcesPlugin.getWorkspace().addResourceChangeListener(this, IResourceChangeEvent.POST_CHANGE);
+	}
+
+	public void dispose() {
+		ResourcesPlugin.getWorkspace().removeResourceChangeListener(this);
+		cache.clear();
+		misses.clear();
+	}
+
+	/**
+	 * Returns the file of the given element, <code>null</code> if it has none.
+	 */
+	public File resolve(Object item) {
+		if (!(item instanceof IAdaptable))
+			return null;
+		File file = cache.get(item);
+		if (file != null)
+			return file;
+		Long until = misses.get(item);
+		if (until != null && until.longValue() > System.currentTimeMillis())
+			return null;
+		file = compute((IAdaptable) item);
+		if (file != null) {
+			cache.put(item, file);
+			misses.remove(item);
+		} else {
+			misses.put(item, Long.valueOf(System.currentTimeMillis() + MISS_TTL));
+		}
+		return file;
+	}
+
+	private static File compute(IAdaptable item) {
+		IResource resource = (IResource) item.getAdapter(IResource.class);
+		if (resource != null) {
+			IPath location = resource.getLocation();
+			if (location != null) {
+				return location.toFile();
+			}
+		}
+		return detect(item.toString());
+	}
+
+	@Override
+	public void resourceChanged(IResourceChangeEvent event) {
+		IResourceDelta delta = event.getDelta();
+		if (delta == null || cache.isEmpty() && misses.isEmpty())
+			return;
+		final boolean[] structural = { false };
+		try {
+			delta.accept(new IResourceDeltaVisitor() {
+				@Override
+				public boolean visit(IResourceDelta child) {
+					if (child.getKind() == IResourceDelta.ADDED || child.getKind() == IResourceDelta.REMOVED
+							|| (child.getFlags() & STRUCTURAL_FLAGS) != 0) {
+						structural[0] = true;
+					}
+					return !structural[0];
+				}
+			});
+		} catch (CoreException e) {
+			LogUtil.error(e);
+			structural[0] = true;
+		}
+		if (structural[0]) {
+			cache.clear();
+			misses.clear();
+		}
+	}
+}
@@ -1,20 +1,18 @@
 package com.github.culmat.eexplorer.views;
 
-import static com.github.culmat.eexplorer.views.FileDetector.detect;
-
 import java.io.File;
 import java.util.Iterator;
 
-import org.eclipse.core.resources.IResource;
-import org.eclipse.core.runtime.IAdaptable;
-import org.eclipse.core.runtime.IPath;
 import org.eclipse.jface.viewers.ISelection;
 import org.eclipse.jface.viewers.IStructuredSelection;
+import org.eclipse.swt.widgets.Display;
 import org.eclipse.ui.ISelectionListener;
 import org.eclipse.ui.ISelectionService;
 import org.eclipse.ui.IWorkbenchPart;
 import org.eclipse.ui.IWorkbenchWindow;
 
+import com.github.culmat.eexplorer.Activator;
+
 public class SyncWithDirectorySelectionListener implements ISelectionListener {
 	enum Target {
 		
@@ -34,6 +32,10 @@ public class SyncWithDirectorySelectionListener implements ISelectionListener {
 	private File lastSelection;
 	private boolean fileMode = false;
 	private File lastNotify;
+	private final NavigationScheduler scheduler;
+	private final Display display;
+	private int requests;
+	private final SelectionResolver resolver = new SelectionResolver();
 
 	public File getLastSelection() {
 		return lastSelection;
@@ -50,14 +52,27 @@ public class SyncWithDirectorySelectionListener implements ISelectionListener {
 	SyncWithDirectorySelectionListener(IWorkbenchWindow workbenchWindow, FileSelectionListener listener) {
 		this.listener = listener;
 		selectionService = workbenchWindow.getSelectionService();
+		display = Display.getDefault();
+		scheduler = new NavigationScheduler(display, Activator.getDefault().getNavigationDelay());
 	}
 
+	/**
+	 * Bursts of selections are coalesced: only the latest one is shown, once
+	 * the selection stayed unchanged for the navigation delay.
+	 */
 	@Override
 	public void selectionChanged(IWorkbenchPart part, ISelection selection) {
 		if (!enabled)
 			return;
 		if (selection instanceof IStructuredSelection) {
-			show((IStructuredSelection) selection);
+			final IStructuredSelection structured = (IStructuredSelection) selection;
+			scheduler.schedule(new Runnable() {
+				@Override
+				public void run() {
+					if (enabled)
+						show(structured);
+				}
+			});
 		}
 	}
 
@@ -67,39 +82,48 @@ public class SyncWithDirectorySelectionListener implements ISelectionListener {
 		@SuppressWarnings("rawtypes")
 		Iterator iterator = sel.iterator();
 		while (iterator.hasNext()) {
-			Object item = iterator.next();
-			if (item instanceof IAdaptable) {
-				IResource resource = (IResource) ((IAdaptable) item).getAdapter(IResource.class);
-				if (resource != null) {
-					IPath location = resource.getLocation();
-					if (location != null) {
-						File file = location.toFile();
-						notifyListener(file);
-						return true;
-					}
-				}
-				File fuzzy = detect(item.toString());
-				if(fuzzy != null) {
-					notifyListener(fuzzy);
-					return true;
-				}
+			File file = resolver.resolve(iterator.next());
+			if (file != null) {
+				notifyListener(file);
+				return true;
 			}
 		}
 		return false;
 	}
 
+	/**
+	 * Shows the given file, or its folder when not in file mode. The file
+	 * system is probed in the background and the listener is notified later
+	 * on the UI thread, unless a newer request was made meanwhile or the
+	 * target is already shown. The target is only compared once probed, since
+	 * the folder of a file is not known before.
+	 * 
+	 * @return <code>false</code> if the file lies on a volume known to be
+	 *         unreachable.
+	 */
 	public boolean notifyListener(File file) {
 		if (file == null)
 			return false;
 		lastNotify = file;
-		if (!file.isDirectory() && !fileMode)
-			file = file.getParentFile();
-		if (file.equals(lastSelection))
+		if (FileProbe.isUnreachable(file))
 			return false;
-		if (!file.exists())
-			return false;
-		lastSelection = file;
-		listener.select(file);
+		final int request = ++requests;
+		FileProbe.probe(file, fileMode, new FileProbe.Callback() {
+			@Override
+			public void probed(final File target) {
+				if (target == null || display.isDisposed())
+					return;
+				display.asyncExec(new Runnable() {
+					@Override
+					public void run() {
+						if (request != requests || target.equals(lastSelection))
+							return;
+						lastSelection = target;
+						listener.select(target);
+					}
+				});
+			}
+		});
 		return true;
 	}
 
@@ -119,12 +143,18 @@ public class SyncWithDirectorySelectionListener implements ISelectionListener {
 				}
 			}
 		} else {
+			scheduler.cancel();
 			for (Target target : Target.values()) {
 				selectionService.removePostSelectionListener(target.id, this);
 			}
 		}
 	}
 
+	public void dispose() {
+		setEnabled(false);
+		resolver.dispose();
+	}
+
 	public void setFileMode(boolean fileMode) {
 		this.fileMode = fileMode;
 		if(lastNotify != null){
@@ -0,0 +1,249 @@
+package com.github.culmat.eexplorer.views;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.IResourceDeltaVisitor;
+import org.eclipse.core.resources.IWorkspaceRoot;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+
+import com.github.culmat.eexplorer.LogUtil;
+
+/**
+ * A {@link PathIndex} of the files and folders under the workspace root and
+ * the open projects, built by a background job and kept current from the
+ * workspace resource deltas. Folders whose name starts with a dot (e.g.
+ * <code>.metadata</code>, <code>.git</code>) are not indexed.
+ */
+public class WorkspaceIndex implements IResourceChangeListener {
+
+	private static WorkspaceIndex instance;
+
+	public static synchronized WorkspaceIndex getDefault() {
+		if (instance == null) {
+			instance = new WorkspaceIndex();
+		}
+		return instance;
+	}
+
+	public static synchronized void shutdown() {
+		if (instance != null) {
+			instance.stop();
+			instance = null;
+		}
+	}
+
+	// the change of a resource received while building
+	private static class Change {
+		final File file;
+		final boolean added;
+		final boolean directory;
+
+		Change(File file, boolean added, boolean directory) {
+			this.file = file;
+			this.added = added;
+			this.directory = directory;
+		}
+	}
+
+	private volatile PathIndex index;
+	private List<Change> pending;
+	private boolean started;
+
+	private final Job job = new Job("Index workspace files") {
+		@Override
+		protected IStatus run(IProgressMonitor monitor) {
+			synchronized (WorkspaceIndex.this) {
+				pending = new ArrayList<Change>();
+			}
+			PathIndex built = build(monitor);
+			synchronized (WorkspaceIndex.this) {
+				if (built != null) {
+					for (Change change : pending) {
+						apply(built, change);
+					}
+					index = built;
+				}
+				pending = null;
+			}
+			return monitor.isCanceled() ? Status.CANCEL_STATUS : Status.OK_STATUS;
+		}
+	};
+
+	private WorkspaceIndex() {
+		job.setSystem(true);
+		job.setPriority(Job.DECORATE);
+	}
+
+	/**
+	 * Builds the index in the background, once.
+	 */
+	public synchronized void start() {
+		if (started)
+			return;
+		started = true;
+		ResourcesPlugin.getWorkspace().addResourceChangeListener(this, IResourceChangeEvent.POST_CHANGE);
+		job.schedule();
+	}
+
+	private synchronized void stop() {
+		if (!started)
+			return;
+		ResourcesPlugin.getWorkspace().removeResourceChangeListener(this);
+		job.cancel();
+		index = null;
+	}
+
+	public boolean isReady() {
+		return index != null;
+	}
+
+	/**
+	 * Returns the best matches for the query, empty while the index is
+	 * built.
+	 */
+	public List<File> search(String query, int max) {
+		PathIndex current = index;
+		if (current == null)
+			return Collections.emptyList();
+		return current.search(query, max);
+	}
+
+	private static PathIndex build(final IProgressMonitor monitor) {
+		IWorkspaceRoot workspace = ResourcesPlugin.getWorkspace().getRoot();
+		Set<File> roots = new LinkedHashSet<File>();
+		roots.add(workspace.getLocation().toFile());
+		for (IProject project : workspace.getProjects()) {
+			IPath location = project.getLocation();
+			if (project.isOpen() && location != null)
+				roots.add(location.toFile());
+		}
+
+		final PathIndex built = new PathIndex();
+		for (File root : roots) {
+			if (built.contains(root))
+				continue;
+			final Deque<Integer> parents = new ArrayDeque<Integer>();
+			parents.push(Integer.valueOf(built.addRoot(root)));
+			try {
+				Files.walkFileTree(root.toPath(), new SimpleFileVisitor<Path>() {
+					private boolean first = true;
+
+					@Override
+					public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+						if (monitor.isCanceled())
+							return FileVisitResult.TERMINATE;
+						if (first) {
+							first = false;
+							return FileVisitResult.CONTINUE;
+						}
+						String name = dir.getFileName().toString();
+						if (name.startsWith("."))
+							return FileVisitResult.SKIP_SUBTREE;
+						parents.push(Integer.valueOf(built.add(parents.peek().intValue(), name, true)));
+						return FileVisitResult.CONTINUE;
+					}
+
+					@Override
+					public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+						built.add(parents.peek().intValue(), file.getFileName().toString(), attrs.isDirectory());
+						return FileVisitResult.CONTINUE;
+					}
+
+					@Override
+					public FileVisitResult visitFileFailed(Path file, IOException exc) {
+						return FileVisitResult.CONTINUE;
+					}
+
+					@Override
+					public FileVisitResult postVisitDirectory(Path dir, IOException exc) {
+						if (parents.size() > 1)
+							parents.pop();
+						return FileVisitResult.CONTINUE;
+					}
+				});
+			} catch (IOException e) {
+				LogUtil.error("Cannot index " + root, e);
+			}
+			if (monitor.isCanceled())
+				return null;
+		}
+		return built;
+	}
+
+	@Override
+	public void resourceChanged(IResourceChangeEvent event) {
+		IResourceDelta delta = event.getDelta();
+		if (delta == null)
+			return;
+		final boolean[] rebuild = { false };
+		try {
+			delta.accept(new IResourceDeltaVisitor() {
+				@Override
+				public boolean visit(IResourceDelta child) {
+					IResource resource = child.getResource();
+					int kind = child.getKind();
+					if (resource.getType() == IResource.PROJECT && ((child.getFlags() & IResourceDelta.OPEN) != 0
+							|| kind == IResourceDelta.ADDED || kind == IResourceDelta.REMOVED)) {
+						// projects may live outside of the workspace root, and
+						// a deleted project no longer has a location
+						rebuild[0] = true;
+						return false;
+					}
+					if (kind != IResourceDelta.ADDED && kind != IResourceDelta.REMOVED)
+						return true;
+					IPath location = resource.getLocation();
+					if (location != null) {
+						changed(new Change(location.toFile(), kind == IResourceDelta.ADDED,
+								resource.getType() != IResource.FILE));
+					}
+					return true;
+				}
+			});
+		} catch (CoreException e) {
+			rebuild[0] = true;
+		}
+		if (rebuild[0])
+			job.schedule();
+	}
+
+	private synchronized void changed(Change change) {
+		if (pending != null)
+			pending.add(change);
+		PathIndex current = index;
+		if (current != null)
+			apply(current, change);
+	}
+
+	private static void apply(PathIndex index, Change change) {
+		if (change.added) {
+			if (!change.file.getName().startsWith("."))
+				index.add(change.file, change.directory);
+		} else {
+			index.remove(change.file);
+		}
+	}
+}
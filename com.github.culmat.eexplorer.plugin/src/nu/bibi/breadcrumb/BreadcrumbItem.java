@@ -367,6 +367,27 @@ public class BreadcrumbItem extends Item {
 		return itemDetail.getCurrentWidth() + itemArrow.getCurrentWidth();
 	}
 
+	/**
+	 * Gets the item width with or without the text, whether or not the text
+	 * is currently visible.
+	 * 
+	 * @param withText
+	 *            <code>true</code> to include the text width.
+	 * @return the item width.
+	 */
+	int getWidth(final boolean withText) {
+		return itemDetail.getWidth(withText) + itemArrow.getCurrentWidth();
+	}
+
+	/**
+	 * Gets the composite containing the item's controls.
+	 * 
+	 * @return the item container.
+	 */
+	Composite getContainer() {
+		return container;
+	}
+
 	/**
 	 * Gets the drop down selection provider.
 	 * 
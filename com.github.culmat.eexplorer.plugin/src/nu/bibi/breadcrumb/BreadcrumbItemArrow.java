@@ -11,6 +11,7 @@
 package nu.bibi.breadcrumb;
 
 import org.eclipse.jface.util.Geometry;
+import org.eclipse.jface.viewers.IContentProvider;
 import org.eclipse.jface.viewers.IOpenListener;
 import org.eclipse.jface.viewers.ISelection;
 import org.eclipse.jface.viewers.ISelectionProvider;
@@ -41,10 +42,15 @@ import org.eclipse.swt.widgets.Label;
 import org.eclipse.swt.widgets.Listener;
 import org.eclipse.swt.widgets.Monitor;
 import org.eclipse.swt.widgets.Shell;
+import org.eclipse.swt.widgets.Text;
 import org.eclipse.swt.widgets.Tree;
 import org.eclipse.swt.widgets.TreeItem;
 
+import nu.bibi.breadcrumb.files.IListingListener;
+import nu.bibi.breadcrumb.files.IListingProvider;
 import nu.bibi.breadcrumb.files.ImageFileRegistry;
+import nu.bibi.breadcrumb.files.LazyFileContentProvider;
+import nu.bibi.breadcrumb.files.LoadingElement;
 import nu.bibi.breadcrumb.internal.Messages;
 
 /**
@@ -64,6 +70,7 @@ class BreadcrumbItemArrow {
 
 		private CLabel lblMessage;
 		private SizeGrip grip;
+		private Text filterText;
 
 		public DropDownWindow(final Shell shell) {
 			super(shell);
@@ -92,10 +99,60 @@ class BreadcrumbItemArrow {
 			setShellBounds(shell);
 
 			// select top index
+			selectChildItem();
+
+			// open, typing in the tree goes to the filter
+			shell.open();
+			dropDownViewer.getTree().setFocus();
+			return OK;
+		}
+
+		/**
+		 * Selects the first item, if any.
+		 */
+		private void selectFirstItem() {
+			final Tree tree = dropDownViewer.getTree();
+			if (tree.getItemCount() > 0) {
+				final TreeItem item = tree.getItem(0);
+				tree.setSelection(item);
+				tree.setTopItem(item);
+				tree.notifyListeners(SWT.Selection, new Event());
+			}
+		}
+
+		/**
+		 * Returns whether the drop down is filtered by name.
+		 */
+		private boolean isFiltered() {
+			return filterText != null && filterText.getText().length() > 0;
+		}
+
+		/**
+		 * Selects the element of the next breadcrumb item, if any, and
+		 * scrolls it to the top.
+		 */
+		private void selectChildItem() {
 			final int index = getViewer().indexOf(parentItem);
 			if (index < getViewer().getItemCount() - 1) {
 				final BreadcrumbItem childItem = getViewer().getItem(index + 1);
 				final Object child = childItem.element;
+
+				// virtual: select by index, only this item is materialized
+				final IContentProvider provider = dropDownViewer
+						.getContentProvider();
+				if (provider instanceof LazyFileContentProvider) {
+					final Tree tree = dropDownViewer.getTree();
+					final int childIndex = ((LazyFileContentProvider) provider)
+							.indexOf(parentItem.element, child);
+					if (childIndex >= 0 && childIndex < tree.getItemCount()) {
+						final TreeItem item = tree.getItem(childIndex);
+						tree.setSelection(item);
+						tree.setTopItem(item);
+						tree.notifyListeners(SWT.Selection, new Event());
+					}
+					return;
+				}
+
 				dropDownViewer.setSelection(new StructuredSelection(child),
 						true);
 				final Tree tree = dropDownViewer.getTree();
@@ -105,10 +162,6 @@ class BreadcrumbItemArrow {
 					tree.notifyListeners(SWT.Selection, new Event());
 				}
 			}
-
-			// open
-			shell.open();
-			return OK;
 		}
 
 		@Override
@@ -133,10 +186,17 @@ class BreadcrumbItemArrow {
 			layout.verticalSpacing = 0;
 			content.setLayout(layout);
 
+			// filter, kept for lazy file content providers only
+			filterText = new Text(content, SWT.SINGLE | SWT.SEARCH
+					| SWT.ICON_CANCEL);
+			filterText.setLayoutData(new GridData(GridData.FILL_HORIZONTAL));
+			filterText.setMessage(Messages.BreadcrumbItemDropDown_Filter_Message);
+
 			int style = SWT.SINGLE | SWT.H_SCROLL | SWT.V_SCROLL;
 			if (!isLTR()) {
 				style |= SWT.RIGHT_TO_LEFT;
 			}
+			style |= getViewer().getDropDownStyle();
 			dropDownViewer = new TreeViewer(content, style);
 			dropDownViewer.setUseHashlookup(true);
 
@@ -176,6 +236,35 @@ class BreadcrumbItemArrow {
 
 			final Object input = parentItem.element;
 			getViewer().configureDropDownViewer(dropDownViewer, input);
+
+			// children listed in the background
+			final IContentProvider provider = dropDownViewer
+					.getContentProvider();
+			if (provider instanceof IListingProvider) {
+				((IListingProvider) provider)
+						.addListingListener(new IListingListener() {
+							@Override
+							public void listingDone(final Object parent) {
+								if (isShellDisposed()) {
+									return;
+								}
+								if (parent.equals(input)) {
+									if (isFiltered()) {
+										selectFirstItem();
+									} else {
+										selectChildItem();
+									}
+								}
+								resizeShell(getShell());
+							}
+						});
+			}
+			if (provider instanceof LazyFileContentProvider) {
+				hookFilter((LazyFileContentProvider) provider, tree);
+			} else {
+				filterText.dispose();
+				filterText = null;
+			}
 			dropDownViewer.setInput(input);
 
 			dropDownViewer.addOpenListener(new IOpenListener() {
@@ -187,7 +276,7 @@ class BreadcrumbItemArrow {
 
 					final Object element = ((IStructuredSelection) selection)
 							.getFirstElement();
-					if (element == null) {
+					if (element == null || element instanceof LoadingElement) {
 						return;
 					}
 
@@ -223,7 +312,7 @@ class BreadcrumbItemArrow {
 					}
 
 					final Object data = item.getData();
-					if (data == null) {
+					if (data == null || data instanceof LoadingElement) {
 						return;
 					}
 
@@ -355,8 +444,12 @@ class BreadcrumbItemArrow {
 					} else {
 						// first item ?
 						final int selectionIndex = tree.indexOf(item);
-						if (selectionIndex == 0) {
-							close();
+						if (selectionIndex == 0 && item.getParentItem() == null) {
+							if (filterText != null) {
+								filterText.setFocus();
+							} else {
+								close();
+							}
 						}
 					}
 				}
@@ -386,6 +479,60 @@ class BreadcrumbItemArrow {
 			return content;
 		}
 
+		/**
+		 * Connects the filter text with the given provider and the tree.
+		 */
+		private void hookFilter(final LazyFileContentProvider provider,
+				final Tree tree) {
+			filterText.addListener(SWT.Modify, new Listener() {
+				@Override
+				public void handleEvent(final Event event) {
+					provider.setFilter(filterText.getText());
+				}
+			});
+			filterText.addListener(SWT.KeyDown, new Listener() {
+				@Override
+				public void handleEvent(final Event event) {
+					switch (event.keyCode) {
+					case SWT.ARROW_DOWN:
+						event.doit = false;
+						tree.setFocus();
+						if (tree.getSelectionCount() == 0) {
+							selectFirstItem();
+						}
+						break;
+					case SWT.CR:
+					case SWT.KEYPAD_CR:
+						event.doit = false;
+						if (tree.getSelectionCount() == 0) {
+							selectFirstItem();
+						}
+						if (tree.getSelectionCount() > 0) {
+							final Object data = tree.getSelection()[0]
+									.getData();
+							if (data != null && !(data instanceof LoadingElement)) {
+								getViewer().fireMenuSelection(data);
+							}
+						}
+						break;
+					}
+				}
+			});
+
+			// typed characters go to the filter
+			tree.addListener(SWT.KeyDown, new Listener() {
+				@Override
+				public void handleEvent(final Event event) {
+					if (event.character >= ' ' && event.character != SWT.DEL
+							&& (event.stateMask & (SWT.CTRL | SWT.ALT)) == 0) {
+						event.doit = false;
+						filterText.setFocus();
+						filterText.insert(String.valueOf(event.character));
+					}
+				}
+			});
+		}
+
 		private boolean isShellDisposed() {
 			return getShell() == null || getShell().isDisposed();
 		}
@@ -449,6 +596,11 @@ class BreadcrumbItemArrow {
 	private boolean enabled;
 	private boolean menuIsShown;
 
+	/*
+	 * the cached arrow width, -1 if not computed
+	 */
+	private int width = -1;
+
 	private TreeViewer dropDownViewer;
 	private DropDownWindow dropDownWindow;
 
@@ -476,15 +628,20 @@ class BreadcrumbItemArrow {
 		leftToRight = (parentContainer.getStyle() & SWT.RIGHT_TO_LEFT) == 0;
 
 		// images
-		rightImage = ImageFileRegistry.getResource(
-				ImageFileRegistry.KEY_ARROW_RIGHT).createImage();
-		leftImage = ImageFileRegistry.getResource(
-				ImageFileRegistry.KEY_ARROW_LEFT).createImage();
-		downImage = ImageFileRegistry.getResource(
-				ImageFileRegistry.KEY_ARROW_DOWN).createImage();
+		final Display display = parentContainer.getDisplay();
+		rightImage = getSharedImage(display, ImageFileRegistry.KEY_ARROW_RIGHT);
+		leftImage = getSharedImage(display, ImageFileRegistry.KEY_ARROW_LEFT);
+		downImage = getSharedImage(display, ImageFileRegistry.KEY_ARROW_DOWN);
 
 		imageElement = new Label(parentContainer, SWT.NONE);
 		imageElement.setImage(getArrowImage(false));
+		imageElement.addListener(SWT.Dispose, new Listener() {
+			public void handleEvent(final Event event) {
+				SharedImages.release(rightImage);
+				SharedImages.release(leftImage);
+				SharedImages.release(downImage);
+			}
+		});
 		imageElement
 				.setToolTipText(Messages.BreadcrumbItemDropDown_Action_ToolTip);
 		imageElement.getAccessible().addAccessibleListener(
@@ -555,7 +712,11 @@ class BreadcrumbItemArrow {
 		if (!imageElement.getVisible()) {
 			return 0;
 		}
-		return imageElement.computeSize(SWT.DEFAULT, SWT.DEFAULT).x;
+		// the arrow images all have the same size
+		if (width == -1) {
+			width = imageElement.computeSize(SWT.DEFAULT, SWT.DEFAULT).x;
+		}
+		return width;
 	}
 
 	/**
@@ -641,6 +802,17 @@ class BreadcrumbItemArrow {
 		imageElement.setVisible(enabled);
 	}
 
+	/*
+	 * Gets a shared arrow image
+	 */
+	private static Image getSharedImage(final Display display, final String key) {
+		return SharedImages.acquire(display, new SharedImages.ImageFactory() {
+			public Image createImage(final Display current) {
+				return ImageFileRegistry.getResource(key).createImage(current);
+			}
+		}, key);
+	}
+
 	private Image getArrowImage(final boolean down) {
 		if (down) {
 			return downImage;
@@ -686,6 +858,16 @@ class BreadcrumbItemArrow {
 			return;
 		}
 
+		// a full virtual tree would materialize all its items to compute
+		// its size
+		final Tree tree = dropDownViewer.getTree();
+		if ((tree.getStyle() & SWT.VIRTUAL) != 0
+				&& tree.getItemCount() * tree.getItemHeight() >= DROP_DOWN_HEIGHT) {
+			setShellSize(shell, Math.max(currentWidth, DROP_DOWN_WIDTH), Math
+					.max(currentHeight, DROP_DOWN_HEIGHT));
+			return;
+		}
+
 		final Point preferedSize = shell.computeSize(SWT.DEFAULT, SWT.DEFAULT,
 				true);
 
@@ -704,6 +886,25 @@ class BreadcrumbItemArrow {
 					DROP_DOWN_HEIGHT);
 		}
 
+		setShellSize(shell, newWidth, newHeight);
+	}
+
+	/**
+	 * Sets the size of the given shell, keeping its right edge in
+	 * right-to-left mode.
+	 * 
+	 * @param shell
+	 *            the shell to resize.
+	 * @param newWidth
+	 *            the new width.
+	 * @param newHeight
+	 *            the new height.
+	 */
+	private void setShellSize(final Shell shell, final int newWidth,
+			final int newHeight) {
+		final Point size = shell.getSize();
+		final int currentWidth = size.x;
+		final int currentHeight = size.y;
 		if (newHeight != currentHeight || newWidth != currentWidth) {
 			shell.setRedraw(false);
 			try {
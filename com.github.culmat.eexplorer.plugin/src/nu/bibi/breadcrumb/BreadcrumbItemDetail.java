@@ -46,6 +46,12 @@ class BreadcrumbItemDetail {
 	private boolean selected;
 	private boolean hasFocus;
 
+	/*
+	 * the cached widths of the image and of the text, -1 if not computed
+	 */
+	private int imageWidth = -1;
+	private int textWidth = -1;
+
 	/**
 	 * Create a new instance of this class with the given item parent and the
 	 * composite parent.
@@ -144,16 +150,37 @@ class BreadcrumbItemDetail {
 	 * @return the current item width.
 	 */
 	public int getCurrentWidth() {
-		int result = 0;
-		if (getImage() != null) {
-			result += 4; // margins
-			result += imageElement.computeSize(SWT.DEFAULT, SWT.DEFAULT).x;
+		return getWidth(textVisible);
+	}
+
+	/**
+	 * Gets the item width with or without the text. The widths are measured
+	 * once and cached until the image or the text changes.
+	 * 
+	 * @param withText
+	 *            <code>true</code> to include the text width.
+	 * @return the item width.
+	 */
+	public int getWidth(final boolean withText) {
+		if (imageWidth == -1) {
+			imageWidth = 0;
+			if (getImage() != null) {
+				imageWidth += 4; // margins
+				imageWidth += imageElement.computeSize(SWT.DEFAULT,
+						SWT.DEFAULT).x;
+			}
+		}
+		if (!withText) {
+			return imageWidth;
 		}
-		if (textVisible && getText().length() > 0) {
-			result += 4; // margins
-			result += textElement.computeSize(SWT.DEFAULT, SWT.DEFAULT).x;
+		if (textWidth == -1) {
+			textWidth = 0;
+			if (getText().length() > 0) {
+				textWidth += 4; // margins
+				textWidth += textElement.computeSize(SWT.DEFAULT, SWT.DEFAULT).x;
+			}
 		}
-		return result;
+		return imageWidth + textWidth;
 	}
 
 	/**
@@ -334,7 +361,10 @@ class BreadcrumbItemDetail {
 	 *                </ul>
 	 */
 	public void setImage(final Image image) {
-		imageElement.setImage(image);
+		if (image != imageElement.getImage()) {
+			imageElement.setImage(image);
+			imageWidth = -1;
+		}
 	}
 
 	/**
@@ -371,10 +401,10 @@ class BreadcrumbItemDetail {
 	 *                </ul>
 	 */
 	public void setText(final String text) {
-		if (text != null) {
-			textElement.setText(text);
-		} else {
-			textElement.setText(""); //$NON-NLS-1$
+		final String newText = text != null ? text : ""; //$NON-NLS-1$
+		if (!newText.equals(textElement.getText())) {
+			textElement.setText(newText);
+			textWidth = -1;
 		}
 	}
 
@@ -11,9 +11,12 @@
 package nu.bibi.breadcrumb;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.eclipse.core.runtime.Assert;
 import org.eclipse.jface.util.SafeRunnable;
@@ -123,11 +126,10 @@ public abstract class BreadcrumbViewer extends StructuredViewer {
 				// update background image
 				if (backgroundImage == null
 						|| backgroundImage.getBounds().height != height) {
-					if (backgroundImage != null) {
-						backgroundImage.dispose();
-					}
-					backgroundImage = createGradientImage(height, event.display);
+					final Image oldImage = backgroundImage;
+					backgroundImage = getGradientImage(height, event.display);
 					container.setBackgroundImage(backgroundImage);
+					SharedImages.release(oldImage);
 				}
 				// update layout
 				refresh();
@@ -135,9 +137,8 @@ public abstract class BreadcrumbViewer extends StructuredViewer {
 		});
 		container.addListener(SWT.Dispose, new Listener() {
 			public void handleEvent(final Event event) {
-				if (backgroundImage != null) {
-					backgroundImage.dispose();
-				}
+				SharedImages.release(backgroundImage);
+				backgroundImage = null;
 			}
 		});
 		container.addListener(SWT.FocusIn, new Listener() {
@@ -546,6 +547,18 @@ public abstract class BreadcrumbViewer extends StructuredViewer {
 	protected abstract void configureDropDownViewer(TreeViewer viewer,
 			Object input);
 
+	/**
+	 * Gets the additional style bits of the drop down tree. This
+	 * implementation returns <code>SWT.NONE</code>. Subclasses returning
+	 * <code>SWT.VIRTUAL</code> must set an <code>ILazyTreeContentProvider</code>
+	 * in {@link #configureDropDownViewer(TreeViewer, Object)}.
+	 * 
+	 * @return the style bits.
+	 */
+	protected int getDropDownStyle() {
+		return SWT.NONE;
+	}
+
 	/**
 	 * Creates a new instance of a breadcrumb item.
 	 * 
@@ -671,31 +684,73 @@ public abstract class BreadcrumbViewer extends StructuredViewer {
 
 		disableRedraw();
 		try {
-			if (items.size() > 0) {
-				final BreadcrumbItem last = items.get(items.size() - 1);
-				last.setIsLastItem(false);
+			final List<Object> chain = getParentChain(fInput);
+			final int count = chain.size();
+			final int oldCount = items.size();
+
+			// the items of the common prefix are kept untouched
+			int prefix = 0;
+			while (prefix < count && prefix < oldCount
+					&& equals(chain.get(prefix), items.get(prefix).element)) {
+				prefix++;
+			}
+			if (prefix == count && prefix == oldCount) {
+				return;
 			}
 
-			final int lastIndex = buildItemChain(fInput);
+			final Set<BreadcrumbItem> changed = new LinkedHashSet<BreadcrumbItem>();
+			for (int i = prefix; i < oldCount; i++) {
+				final BreadcrumbItem item = items.get(i);
+				if (item.element != null) {
+					unmapElement(item.element);
+					item.element = null;
+				}
+			}
 
-			if (lastIndex > 0) {
-				final BreadcrumbItem last = items.get(lastIndex - 1);
-				last.setIsLastItem(true);
+			// reuse or create the items of the new tail
+			for (int i = prefix; i < count; i++) {
+				final BreadcrumbItem item;
+				if (i < items.size()) {
+					item = items.get(i);
+				} else {
+					item = createItem();
+					items.add(item);
+				}
+				final Object element = chain.get(i);
+				item.element = element;
+				item.refresh();
+				if (i == 0) {
+					// don't show the models root
+					item.setDetailsVisible(rootVisible);
+				}
+				mapElement(element, item);
+				changed.add(item);
 			}
 
-			while (lastIndex < items.size()) {
+			// remove the items of the old tail
+			while (count < items.size()) {
 				final BreadcrumbItem item = items.remove(items.size() - 1);
 				if (item == selectedItem) {
 					selectItem(null);
 				}
-				if (item.element != null) {
-					unmapElement(item.element);
-				}
 				item.dispose();
 			}
 
-			updateSize();
-			container.layout(true, true);
+			if (count != oldCount) {
+				if (oldCount > 0 && oldCount <= count) {
+					final BreadcrumbItem item = items.get(oldCount - 1);
+					item.setIsLastItem(false);
+					changed.add(item);
+				}
+				if (count > 0) {
+					final BreadcrumbItem item = items.get(count - 1);
+					item.setIsLastItem(true);
+					changed.add(item);
+				}
+			}
+
+			updateSize(changed);
+			layoutItems(changed);
 		} finally {
 			enableRedraw();
 		}
@@ -766,48 +821,43 @@ public abstract class BreadcrumbViewer extends StructuredViewer {
 	}
 
 	/**
-	 * Generates the parent chain of the given element.
+	 * Gets the parent chain of the given element.
 	 * 
 	 * @param element
-	 *            element to build the parent chain for
-	 * @return the first index of an item in fBreadcrumbItems which is not part
-	 *         of the chain
+	 *            element to get the parent chain for
+	 * @return the chain, from the root to the given element, empty if the
+	 *         element is <code>null</code>.
 	 */
-	private int buildItemChain(final Object element) {
-		if (element == null) {
-			return 0;
-		}
-
+	private List<Object> getParentChain(final Object element) {
+		final ArrayList<Object> chain = new ArrayList<Object>();
 		final ITreeContentProvider contentProvider = getContentProvider();
-		final Object parent = contentProvider.getParent(element);
-
-		final int index = buildItemChain(parent);
-
-		BreadcrumbItem item;
-		if (index < items.size()) {
-			item = items.get(index);
-			if (item.element != null) {
-				unmapElement(item.element);
-			}
-		} else {
-			item = createItem();
-			items.add(item);
+		for (Object current = element; current != null; current = contentProvider
+				.getParent(current)) {
+			chain.add(current);
 		}
+		Collections.reverse(chain);
+		return chain;
+	}
 
-		if (equals(element, item.element)) {
-			update(element, null);
-		} else {
-			item.element = element;
-			item.refresh();
+	/**
+	 * Lays out the given items and the container. Only the changed items are
+	 * laid out, the others keep their cached sizes.
+	 * 
+	 * @param changed
+	 *            the changed items.
+	 */
+	private void layoutItems(final Collection<BreadcrumbItem> changed) {
+		final Control[] controls = new Control[changed.size()];
+		int index = 0;
+		for (final BreadcrumbItem item : changed) {
+			item.getContainer().layout(true, true);
+			controls[index++] = item.getContainer();
 		}
-		if (parent == null) {
-			// don't show the models root
-			item.setDetailsVisible(rootVisible);
+		if (controls.length > 0) {
+			container.layout(controls);
+		} else {
+			container.layout(false);
 		}
-
-		mapElement(element, item);
-
-		return index + 1;
 	}
 
 	private Color createColor(final int color1, final int color2,
@@ -820,6 +870,33 @@ public abstract class BreadcrumbViewer extends StructuredViewer {
 		return new Color(display, blend);
 	}
 
+	/**
+	 * Gets the shared background image for the given height. The image is
+	 * shared with the other viewers having the same height and theme colors
+	 * and must be released with {@link SharedImages#release(Image)}.
+	 * 
+	 * @param height
+	 *            the height of the image
+	 * @param display
+	 *            the current display
+	 * @return the image for the breadcrumb background
+	 */
+	private Image getGradientImage(final int height, final Display display) {
+		return SharedImages.acquire(display, new SharedImages.ImageFactory() {
+			public Image createImage(final Display current) {
+				return createGradientImage(height, current);
+			}
+		}, "gradient", Integer.valueOf(height), //$NON-NLS-1$
+				getRGB(display, SWT.COLOR_WIDGET_BACKGROUND),
+				getRGB(display, SWT.COLOR_LIST_BACKGROUND),
+				getRGB(display, SWT.COLOR_WHITE),
+				getRGB(display, SWT.COLOR_WIDGET_NORMAL_SHADOW));
+	}
+
+	private static RGB getRGB(final Display display, final int color) {
+		return display.getSystemColor(color).getRGB();
+	}
+
 	/**
 	 * The image to use for the breadcrumb background as specified in
 	 * https://bugs.eclipse.org/bugs/show_bug.cgi?id=221477
@@ -911,60 +988,62 @@ public abstract class BreadcrumbViewer extends StructuredViewer {
 	}
 
 	/**
-	 * Returns the current width of all items in the list.
+	 * Update the size of the items such that all items are visible, if
+	 * possible.
+	 * <p>
+	 * Each item is measured once with and without its text (the widths are
+	 * cached by the items), then the texts of the leading items are hidden,
+	 * in a single pass, until the remaining items fit. The last item always
+	 * shows its text.
+	 * </p>
 	 * 
-	 * @return the width of all items.
+	 * @return true if any item has changed, false otherwise.
 	 */
-	private int getCurrentWidth() {
-		int result = 2;
-		for (final BreadcrumbItem item : items) {
-			result += item.getCurrentWidth();
-		}
-		return result;
+	private boolean updateSize() {
+		return updateSize(null);
 	}
 
 	/**
 	 * Update the size of the items such that all items are visible, if
 	 * possible.
 	 * 
+	 * @param changed
+	 *            the collection to add the changed items to or
+	 *            <code>null</code>.
 	 * @return true if any item has changed, false otherwise.
 	 */
-	private boolean updateSize() {
-		boolean requiresLayout = false;
-		int currentWidth = getCurrentWidth();
+	private boolean updateSize(final Collection<BreadcrumbItem> changed) {
 		final int width = container.getClientArea().width;
+		final int count = items.size();
+
+		// width with all texts shown and space saved by hiding each text
+		int currentWidth = 2;
+		final int[] savings = new int[count];
+		for (int i = 0; i < count; i++) {
+			final BreadcrumbItem item = items.get(i);
+			final int fullWidth = item.getWidth(true);
+			currentWidth += fullWidth;
+			savings[i] = fullWidth - item.getWidth(false);
+		}
 
-		if (currentWidth > width) {
-			// hide texts
-			int index = 0;
-			while (currentWidth > width && index < items.size() - 1) {
-				final BreadcrumbItem viewer = items.get(index);
-				if (viewer.isShowText()) {
-					viewer.setTextVisible(false);
-					currentWidth = getCurrentWidth();
-					requiresLayout = true;
-				}
-
-				index++;
-			}
+		// hide texts from the first item until the others fit
+		int hidden = 0;
+		while (currentWidth > width && hidden < count - 1) {
+			currentWidth -= savings[hidden];
+			hidden++;
+		}
 
-		} else if (currentWidth < width) {
-			// display texts
-			int index = items.size() - 1;
-
-			while (currentWidth < width && index >= 0) {
-				final BreadcrumbItem item = items.get(index);
-				if (!item.isShowText()) {
-					item.setTextVisible(true);
-					currentWidth = getCurrentWidth();
-					if (currentWidth > width) {
-						item.setTextVisible(false);
-						index = 0;
-					} else {
-						requiresLayout = true;
-					}
+		// apply changes only
+		boolean requiresLayout = false;
+		for (int i = 0; i < count; i++) {
+			final BreadcrumbItem item = items.get(i);
+			final boolean showText = i >= hidden;
+			if (item.isShowText() != showText) {
+				item.setTextVisible(showText);
+				requiresLayout = true;
+				if (changed != null) {
+					changed.add(item);
 				}
-				index--;
 			}
 		}
 
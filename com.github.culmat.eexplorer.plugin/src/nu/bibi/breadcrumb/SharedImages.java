@@ -0,0 +1,127 @@
+/*******************************************************************************
+ * Copyright (c) 2008 Laurent Muller.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     Laurent Muller - initial API and implementation
+ *******************************************************************************/
+package nu.bibi.breadcrumb;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.swt.graphics.Image;
+import org.eclipse.swt.widgets.Display;
+
+/**
+ * A cache of images shared by all the breadcrumb viewers and items. Images are
+ * keyed by their display and by a description (for example the height and
+ * the theme colors of a background), created on the first request and
+ * disposed when the last user releases them.
+ * <p>
+ * This class must be used from the user-interface thread.
+ * </p>
+ * 
+ * @author Laurent Muller
+ * @version 1.0
+ */
+final class SharedImages {
+
+	/**
+	 * Creates the image of a key when it is not cached.
+	 */
+	interface ImageFactory {
+
+		/**
+		 * Creates the image.
+		 * 
+		 * @param display
+		 *            the display to create the image for.
+		 * @return the new image.
+		 */
+		Image createImage(Display display);
+	}
+
+	/*
+	 * a cached image
+	 */
+	private static class Entry {
+		final List<Object> key;
+		final Image image;
+		int references;
+
+		Entry(final List<Object> key, final Image image) {
+			this.key = key;
+			this.image = image;
+		}
+	}
+
+	/*
+	 * the entries by key and by image
+	 */
+	private static final Map<List<Object>, Entry> ENTRIES = new HashMap<List<Object>, Entry>();
+	private static final Map<Image, Entry> IMAGES = new IdentityHashMap<Image, Entry>();
+
+	/**
+	 * Gets the image for the given description, creating it if needed. Each
+	 * call must be balanced by a call to {@link #release(Image)}.
+	 * 
+	 * @param display
+	 *            the display.
+	 * @param factory
+	 *            the factory used when the image is not cached.
+	 * @param description
+	 *            the values identifying the image.
+	 * @return the shared image.
+	 */
+	static Image acquire(final Display display, final ImageFactory factory,
+			final Object... description) {
+		final Object[] values = new Object[description.length + 1];
+		values[0] = display;
+		System.arraycopy(description, 0, values, 1, description.length);
+		final List<Object> key = Arrays.asList(values);
+
+		Entry entry = ENTRIES.get(key);
+		if (entry == null || entry.image.isDisposed()) {
+			if (entry != null) {
+				IMAGES.remove(entry.image);
+			}
+			entry = new Entry(key, factory.createImage(display));
+			ENTRIES.put(key, entry);
+			IMAGES.put(entry.image, entry);
+		}
+		entry.references++;
+		return entry.image;
+	}
+
+	/**
+	 * Releases an image returned by
+	 * {@link #acquire(Display, ImageFactory, Object...)}. The image is
+	 * disposed when it is no more used.
+	 * 
+	 * @param image
+	 *            the image to release, may be <code>null</code>.
+	 */
+	static void release(final Image image) {
+		final Entry entry = IMAGES.get(image);
+		if (entry == null) {
+			return;
+		}
+		if (--entry.references == 0) {
+			IMAGES.remove(image);
+			ENTRIES.remove(entry.key);
+			if (!image.isDisposed()) {
+				image.dispose();
+			}
+		}
+	}
+
+	private SharedImages() {
+	}
+}
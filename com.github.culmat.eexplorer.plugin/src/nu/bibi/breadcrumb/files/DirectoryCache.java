@@ -0,0 +1,408 @@
+/*******************************************************************************
+ * Copyright (c) 2008 Laurent Muller.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     Laurent Muller - initial API and implementation
+ *******************************************************************************/
+package nu.bibi.breadcrumb.files;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A bounded, least recently used cache of directory listings keyed by
+ * absolute path, so that a lookup never accesses the file system. The
+ * listings keep the attributes read with them.
+ * <p>
+ * Each cached directory is registered with the {@link DirectoryWatcher} under
+ * its canonical path, computed once before the directory is listed, and
+ * dropped as soon as a change is reported. A listing is obtained with
+ * {@link #watch(File)} before reading the directory and stored with
+ * {@link #put(Ticket, FileEntry[])}; it is discarded if a change was reported
+ * meanwhile. Entries also expire after a time to live, shorter for
+ * directories whose file system does not support change notifications.
+ * Listings are unfiltered; callers apply their own filters.
+ * </p>
+ * 
+ * @author Laurent Muller
+ * @version 1.0
+ */
+public class DirectoryCache implements DirectoryWatcher.Listener {
+
+	/*
+	 * A cached listing
+	 */
+	private static class Entry {
+		final FileEntry[] children;
+		final long expires;
+
+		/*
+		 * the canonical directory registered with the watcher, null if not
+		 * watched
+		 */
+		final File watched;
+
+		Entry(final FileEntry[] children, final long expires,
+				final File watched) {
+			this.children = children;
+			this.expires = expires;
+			this.watched = watched;
+		}
+	}
+
+	/**
+	 * A listing in progress, started with {@link DirectoryCache#watch(File)}
+	 * before the directory is read.
+	 */
+	public static final class Ticket {
+		final File key;
+		final File canonical;
+		final boolean watched;
+
+		/*
+		 * whether a change was reported since the watch
+		 */
+		boolean changed;
+
+		Ticket(final File key, final File canonical, final boolean watched) {
+			this.key = key;
+			this.canonical = canonical;
+			this.watched = watched;
+		}
+	}
+
+	/**
+	 * The default maximum number of cached directories.
+	 */
+	public final static int DEFAULT_CAPACITY = 64;
+
+	/**
+	 * The time to live, in milliseconds, of a watched directory listing.
+	 */
+	public final static long WATCHED_TTL = 5 * 60 * 1000;
+
+	/**
+	 * The time to live, in milliseconds, of a listing without change
+	 * notifications.
+	 */
+	public final static long UNWATCHED_TTL = 10 * 1000;
+
+	/*
+	 * the default instance
+	 */
+	private static DirectoryCache instance;
+
+	/**
+	 * Returns the default cache shared by all file viewers.
+	 * 
+	 * @return the default cache.
+	 */
+	public static synchronized DirectoryCache getDefault() {
+		if (instance == null) {
+			instance = new DirectoryCache(DEFAULT_CAPACITY);
+			DirectoryWatcher.getInstance().addListener(instance);
+		}
+		return instance;
+	}
+
+	/**
+	 * Gets the absolute form of the given directory, used as cache key. This
+	 * method does not access the file system.
+	 * 
+	 * @param directory
+	 *            the directory.
+	 * @return the absolute file.
+	 */
+	private static File getKey(final File directory) {
+		return directory.getAbsoluteFile();
+	}
+
+	/**
+	 * Gets the canonical form of the given directory, registered with the
+	 * watcher.
+	 * 
+	 * @param directory
+	 *            the directory.
+	 * @return the canonical file or the absolute file if the canonical path
+	 *         cannot be computed.
+	 */
+	private static File getCanonicalFile(final File directory) {
+		try {
+			return directory.getCanonicalFile();
+		} catch (final IOException e) {
+			return directory.getAbsoluteFile();
+		}
+	}
+
+	/*
+	 * the cached listings, in access order
+	 */
+	private final LinkedHashMap<File, Entry> entries;
+
+	/*
+	 * the listings in progress
+	 */
+	private final List<Ticket> pending = new ArrayList<Ticket>();
+
+	/*
+	 * the counters
+	 */
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	/**
+	 * Creates a new cache.
+	 * 
+	 * @param capacity
+	 *            the maximum number of cached directories.
+	 */
+	public DirectoryCache(final int capacity) {
+		entries = new LinkedHashMap<File, Entry>(capacity, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(
+					final Map.Entry<File, Entry> eldest) {
+				if (size() > capacity) {
+					evictions++;
+					release(eldest.getKey(), eldest.getValue());
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Removes all the cached listings.
+	 */
+	public synchronized void clear() {
+		final List<Entry> cleared = new ArrayList<Entry>(entries.values());
+		entries.clear();
+		for (final Entry entry : cleared) {
+			if (entry.watched != null) {
+				unwatch(entry.watched, null);
+			}
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see nu.bibi.breadcrumb.files.DirectoryWatcher.Listener#directoryChanged(java.io.File)
+	 */
+	@Override
+	public synchronized void directoryChanged(final File directory) {
+		// all the paths leading to the directory
+		final Iterator<Entry> iterator = entries.values().iterator();
+		while (iterator.hasNext()) {
+			if (directory.equals(iterator.next().watched)) {
+				iterator.remove();
+			}
+		}
+		// the listings in progress may have missed the change
+		for (final Ticket ticket : pending) {
+			if (directory.equals(ticket.canonical)) {
+				ticket.changed = true;
+			}
+		}
+		DirectoryWatcher.getInstance().unwatch(directory, this);
+	}
+
+	/**
+	 * Gets the cached children of the given directory.
+	 * 
+	 * @param directory
+	 *            the directory.
+	 * @return the children, resolved against the given directory, or
+	 *         <code>null</code> if not cached.
+	 */
+	public FileEntry[] get(final File directory) {
+		final File key = getKey(directory);
+		final FileEntry[] children;
+		synchronized (this) {
+			final Entry entry = entries.get(key);
+			if (entry == null) {
+				misses++;
+				return null;
+			}
+			if (entry.expires < System.currentTimeMillis()) {
+				entries.remove(key);
+				release(key, entry);
+				misses++;
+				return null;
+			}
+			hits++;
+			children = entry.children;
+		}
+
+		final FileEntry[] files = new FileEntry[children.length];
+		for (int i = 0; i < children.length; i++) {
+			files[i] = children[i].withParent(directory);
+		}
+		return files;
+	}
+
+	/**
+	 * Gets the number of evicted listings.
+	 * 
+	 * @return the number of listings removed to respect the capacity.
+	 */
+	public synchronized long getEvictionCount() {
+		return evictions;
+	}
+
+	/**
+	 * Gets the number of successful lookups.
+	 * 
+	 * @return the hit count.
+	 */
+	public synchronized long getHitCount() {
+		return hits;
+	}
+
+	/**
+	 * Gets the number of failed lookups.
+	 * 
+	 * @return the miss count.
+	 */
+	public synchronized long getMissCount() {
+		return misses;
+	}
+
+	/**
+	 * Invalidates the cached listing of the given directory.
+	 * 
+	 * @param directory
+	 *            the directory.
+	 */
+	public void invalidate(final File directory) {
+		final File key = getKey(directory);
+		final File watched;
+		synchronized (this) {
+			final Entry entry = entries.remove(key);
+			if (entry == null || entry.watched == null) {
+				return;
+			}
+			watched = entry.watched;
+		}
+		directoryChanged(watched);
+	}
+
+	/**
+	 * Starts watching the given directory before it is listed, so that a
+	 * change made while listing is not missed. The returned ticket must be
+	 * passed to {@link #put(Ticket, FileEntry[])} or to
+	 * {@link #cancel(Ticket)}.
+	 * 
+	 * @param directory
+	 *            the directory about to be listed.
+	 * @return the ticket of the listing.
+	 */
+	public Ticket watch(final File directory) {
+		final File key = getKey(directory);
+		final File canonical = getCanonicalFile(directory);
+		synchronized (this) {
+			final boolean watched = DirectoryWatcher.getInstance().watch(
+					canonical, this);
+			final Ticket ticket = new Ticket(key, canonical, watched);
+			pending.add(ticket);
+			return ticket;
+		}
+	}
+
+	/**
+	 * Stores the complete, unfiltered children of a listed directory. The
+	 * listing is discarded if the directory changed since the ticket was
+	 * obtained.
+	 * 
+	 * @param ticket
+	 *            the ticket obtained before listing the directory.
+	 * @param children
+	 *            the children with their attributes.
+	 */
+	public synchronized void put(final Ticket ticket, final FileEntry[] children) {
+		if (!pending.remove(ticket)) {
+			return;
+		}
+		if (ticket.changed) {
+			// already unwatched with the change
+			return;
+		}
+		final long ttl = ticket.watched ? WATCHED_TTL : UNWATCHED_TTL;
+		entries.put(ticket.key, new Entry(children, System.currentTimeMillis()
+				+ ttl, ticket.watched ? ticket.canonical : null));
+	}
+
+	/**
+	 * Abandons a listing which is not stored, e.g. because it is incomplete.
+	 * 
+	 * @param ticket
+	 *            the ticket obtained before listing the directory.
+	 */
+	public synchronized void cancel(final Ticket ticket) {
+		if (pending.remove(ticket) && ticket.watched) {
+			unwatch(ticket.canonical, null);
+		}
+	}
+
+	/**
+	 * Stops watching the directory of the given entry, unless another cached
+	 * path leads to it. The caller must hold the lock.
+	 */
+	private void release(final File key, final Entry entry) {
+		if (entry.watched != null) {
+			unwatch(entry.watched, key);
+		}
+	}
+
+	/**
+	 * Stops watching the given canonical directory, unless a cached path
+	 * other than the given key or a listing in progress leads to it. The
+	 * caller must hold the lock.
+	 */
+	private void unwatch(final File watched, final File key) {
+		for (final Map.Entry<File, Entry> other : entries.entrySet()) {
+			if (!other.getKey().equals(key)
+					&& watched.equals(other.getValue().watched)) {
+				return;
+			}
+		}
+		for (final Ticket ticket : pending) {
+			if (ticket.watched && watched.equals(ticket.canonical)) {
+				return;
+			}
+		}
+		DirectoryWatcher.getInstance().unwatch(watched, this);
+	}
+
+	/**
+	 * Returns the number of cached listings.
+	 * 
+	 * @return the number of cached listings.
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public synchronized String toString() {
+		return "DirectoryCache[size=" + entries.size() + ", hits=" + hits //$NON-NLS-1$ //$NON-NLS-2$
+				+ ", misses=" + misses + ", evictions=" + evictions + "]"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+	}
+}
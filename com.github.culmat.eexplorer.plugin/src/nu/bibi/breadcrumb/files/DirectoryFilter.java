@@ -18,7 +18,8 @@ import org.eclipse.jface.viewers.ViewerFilter;
 /**
  * Directory viewer filter. When this filter is applied, only drive files (
  * <code>File.getParent() ==  null</code>) and directory files (
- * <code>File.isDirectory()</code>) are displayed.
+ * <code>File.isDirectory()</code>) are displayed. The directory flag of a
+ * {@link FileEntry} is read from its attributes.
  * 
  * @author Laurent Muller
  * @version 1.0
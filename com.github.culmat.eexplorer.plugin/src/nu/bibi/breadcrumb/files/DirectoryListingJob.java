@@ -0,0 +1,199 @@
+/*******************************************************************************
+ * Copyright (c) 2008 Laurent Muller.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     Laurent Muller - initial API and implementation
+ *******************************************************************************/
+package nu.bibi.breadcrumb.files;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.jface.viewers.Viewer;
+import org.eclipse.jface.viewers.ViewerFilter;
+
+/**
+ * A background job listing the children of a directory. The children passing
+ * the given filters are handed to the collector in batches as they are read
+ * from the disk. The children are {@link FileEntry} instances carrying the
+ * attributes read during the listing. Complete listings are stored in the
+ * {@link DirectoryCache} and served from it while valid.
+ * <p>
+ * The collector is called from the job thread; implementations must post any
+ * widget update to the display thread.
+ * </p>
+ * 
+ * @author Laurent Muller
+ * @version 1.0
+ */
+public class DirectoryListingJob extends Job {
+
+	/**
+	 * Receives the children found by a directory listing job.
+	 */
+	public interface Collector {
+
+		/**
+		 * Adds a batch of children.
+		 * 
+		 * @param files
+		 *            the children read since the last batch.
+		 */
+		void add(File[] files);
+
+		/**
+		 * Notifies that the listing is complete. This method is not called
+		 * if the job has been canceled.
+		 * 
+		 * @param files
+		 *            all the children of the directory.
+		 */
+		void done(File[] files);
+	}
+
+	/**
+	 * The family of all directory listing jobs.
+	 */
+	public final static Object FAMILY = DirectoryListingJob.class;
+
+	/*
+	 * the number of children sent to the collector at once
+	 */
+	private static final int BATCH_SIZE = 256;
+
+	/*
+	 * the listed directory
+	 */
+	private final File directory;
+
+	/*
+	 * the viewer and its filters
+	 */
+	private final Viewer viewer;
+	private final ViewerFilter[] filters;
+
+	/*
+	 * the collector
+	 */
+	private final Collector collector;
+
+	/**
+	 * Create a new instance of this class.
+	 * 
+	 * @param directory
+	 *            the directory to list.
+	 * @param viewer
+	 *            the viewer passed to the filters, may be <code>null</code>.
+	 * @param filters
+	 *            the filters to apply, may be <code>null</code>. Filters are
+	 *            called from the job thread.
+	 * @param collector
+	 *            the collector receiving the children.
+	 */
+	public DirectoryListingJob(final File directory, final Viewer viewer,
+			final ViewerFilter[] filters, final Collector collector) {
+		super(directory.getAbsolutePath());
+		this.directory = directory;
+		this.viewer = viewer;
+		this.filters = filters;
+		this.collector = collector;
+		setSystem(true);
+		setPriority(INTERACTIVE);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.eclipse.core.runtime.jobs.Job#belongsTo(java.lang.Object)
+	 */
+	@Override
+	public boolean belongsTo(final Object family) {
+		return family == FAMILY;
+	}
+
+	/**
+	 * Gets the listed directory.
+	 * 
+	 * @return the listed directory.
+	 */
+	public File getDirectory() {
+		return directory;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.eclipse.core.runtime.jobs.Job#run(org.eclipse.core.runtime.IProgressMonitor)
+	 */
+	@Override
+	protected IStatus run(final IProgressMonitor monitor) {
+		// cached ?
+		final DirectoryCache cache = DirectoryCache.getDefault();
+		final File[] cached = cache.get(directory);
+		if (cached != null) {
+			final List<File> selected = new ArrayList<File>(cached.length);
+			for (final File file : cached) {
+				if (FileUtils.select(viewer, filters, directory, file)) {
+					selected.add(file);
+				}
+			}
+			final File[] files = selected.toArray(new File[selected.size()]);
+			if (files.length > 0) {
+				collector.add(files);
+			}
+			collector.done(files);
+			return Status.OK_STATUS;
+		}
+
+		final DirectoryCache.Ticket ticket = cache.watch(directory);
+		final List<FileEntry> listed = new ArrayList<FileEntry>();
+		final List<File> all = new ArrayList<File>();
+		final List<File> batch = new ArrayList<File>(BATCH_SIZE);
+
+		// if not readable, keep what we have
+		final boolean complete = FileUtils.listEntries(directory,
+				new FileUtils.EntryVisitor() {
+					@Override
+					public boolean visit(final FileEntry entry) {
+						if (monitor.isCanceled()) {
+							return false;
+						}
+						listed.add(entry);
+						if (!FileUtils.select(viewer, filters, directory, entry)) {
+							return true;
+						}
+						all.add(entry);
+						batch.add(entry);
+						if (batch.size() == BATCH_SIZE) {
+							collector.add(batch.toArray(new File[batch.size()]));
+							batch.clear();
+						}
+						return true;
+					}
+				});
+
+		if (monitor.isCanceled()) {
+			cache.cancel(ticket);
+			return Status.CANCEL_STATUS;
+		}
+		if (complete) {
+			cache.put(ticket, listed.toArray(new FileEntry[listed.size()]));
+		} else {
+			cache.cancel(ticket);
+		}
+		if (!batch.isEmpty()) {
+			collector.add(batch.toArray(new File[batch.size()]));
+		}
+		collector.done(all.toArray(new File[all.size()]));
+		return Status.OK_STATUS;
+	}
+}
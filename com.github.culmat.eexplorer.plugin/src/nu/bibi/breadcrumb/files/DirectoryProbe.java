@@ -0,0 +1,137 @@
+/*******************************************************************************
+ * Copyright (c) 2008 Laurent Muller.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     Laurent Muller - initial API and implementation
+ *******************************************************************************/
+package nu.bibi.breadcrumb.files;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.jface.viewers.Viewer;
+import org.eclipse.jface.viewers.ViewerFilter;
+
+/**
+ * Answers whether a directory has at least one child passing the viewer
+ * filters. The directory is read until the first selected entry only and the
+ * result is cached per directory for the current filters. The directory is
+ * read without holding the lock, so that the cached results can be queried
+ * from the display thread while a probe runs.
+ * 
+ * @author Laurent Muller
+ * @version 1.0
+ */
+public class DirectoryProbe {
+
+	/*
+	 * the cached results
+	 */
+	private final Map<File, Boolean> results = new HashMap<File, Boolean>();
+
+	/*
+	 * the filters used to compute the cached results
+	 */
+	private ViewerFilter[] filters;
+
+	/**
+	 * Clears all the cached results.
+	 */
+	public synchronized void clear() {
+		results.clear();
+	}
+
+	/**
+	 * Returns whether the given directory has at least one child passing the
+	 * given filters.
+	 * 
+	 * @param directory
+	 *            the directory to probe.
+	 * @param viewer
+	 *            the viewer passed to the filters, may be <code>null</code>.
+	 * @param filters
+	 *            the filters to apply, may be <code>null</code>.
+	 * @return <code>true</code> if a child is found.
+	 */
+	public boolean hasChildren(final File directory, final Viewer viewer,
+			final ViewerFilter[] filters) {
+		final Boolean cached = getResult(directory, filters);
+		if (cached != null) {
+			return cached.booleanValue();
+		}
+		final boolean result = probe(directory, viewer, filters);
+		synchronized (this) {
+			if (Arrays.equals(this.filters, filters)) {
+				results.put(directory, Boolean.valueOf(result));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Gets the cached result for the given directory. This method does not
+	 * access the file system.
+	 * 
+	 * @param directory
+	 *            the directory.
+	 * @param filters
+	 *            the filters to apply, may be <code>null</code>.
+	 * @return the cached result or <code>null</code> if the directory has not
+	 *         been probed yet.
+	 */
+	public synchronized Boolean getResult(final File directory,
+			final ViewerFilter[] filters) {
+		if (!Arrays.equals(this.filters, filters)) {
+			results.clear();
+			this.filters = filters;
+		}
+		return results.get(directory);
+	}
+
+	/**
+	 * Stores a known result, for example from a complete listing.
+	 * 
+	 * @param directory
+	 *            the directory.
+	 * @param hasChildren
+	 *            <code>true</code> if the directory has selected children.
+	 */
+	public synchronized void put(final File directory,
+			final boolean hasChildren) {
+		results.put(directory, Boolean.valueOf(hasChildren));
+	}
+
+	/**
+	 * Reads the given directory, or its cached listing, until the first child
+	 * passing the filters.
+	 */
+	private static boolean probe(final File directory, final Viewer viewer,
+			final ViewerFilter[] filters) {
+		// already listed ?
+		final File[] cached = DirectoryCache.getDefault().get(directory);
+		if (cached != null) {
+			for (final File file : cached) {
+				if (FileUtils.select(viewer, filters, directory, file)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		final boolean[] found = { false };
+		FileUtils.listEntries(directory, new FileUtils.EntryVisitor() {
+			@Override
+			public boolean visit(final FileEntry entry) {
+				found[0] = FileUtils.select(viewer, filters, directory, entry);
+				return !found[0];
+			}
+		});
+		return found[0];
+	}
+}
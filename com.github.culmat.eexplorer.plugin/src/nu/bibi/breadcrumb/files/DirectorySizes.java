@@ -0,0 +1,614 @@
+/*******************************************************************************
+ * Copyright (c) 2008 Laurent Muller.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     Laurent Muller - initial API and implementation
+ *******************************************************************************/
+package nu.bibi.breadcrumb.files;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.FileVisitOption;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+
+/**
+ * Computes the total size of directory trees on demand and caches the total
+ * of each directory.
+ * <p>
+ * A computation walks the tree with fork/join tasks, one per directory, so
+ * idle workers steal the subtrees of busy ones. Each directory keeps the size
+ * of its own files, its subdirectories and its total. Computed directories
+ * are registered with the {@link DirectoryWatcher}: a change only lists the
+ * changed directory again and sums its ancestors from the cached totals of
+ * their other children. Directories which could not be watched are listed
+ * again when a total is requested, not when a change is summed. The
+ * directories of pruned subtrees and of cancelled computations are no longer
+ * watched, so that they can be deleted; their cached totals are kept until
+ * a change of their ancestors sums them again. Listeners receive the new
+ * totals while the computation runs, at most every {@link #NOTIFY_INTERVAL}
+ * milliseconds.
+ * </p>
+ * 
+ * @author Laurent Muller
+ * @version 1.0
+ */
+public class DirectorySizes implements DirectoryWatcher.Listener {
+
+	/*
+	 * The cached sizes of a directory
+	 */
+	private static class Node {
+		/*
+		 * the size of the files, -1 if not listed or changed since
+		 */
+		long own = -1;
+
+		/*
+		 * the subdirectories, null if not listed
+		 */
+		File[] directories;
+
+		/*
+		 * the total, -1 if never computed
+		 */
+		long total = -1;
+
+		/*
+		 * whether the total is up to date
+		 */
+		boolean summed;
+	}
+
+	/**
+	 * The minimum time, in milliseconds, between two notifications of a
+	 * running computation.
+	 */
+	public final static long NOTIFY_INTERVAL = 250;
+
+	/**
+	 * The maximum number of directories registered with the watcher.
+	 */
+	public final static int MAX_WATCHED = 4096;
+
+	/**
+	 * The delay, in milliseconds, before a changed tree is summed again.
+	 */
+	public final static long UPDATE_DELAY = 500;
+
+	/*
+	 * the default instance
+	 */
+	private static DirectorySizes instance;
+
+	/**
+	 * Returns the default instance shared by all file viewers.
+	 * 
+	 * @return the default instance.
+	 */
+	public static synchronized DirectorySizes getDefault() {
+		if (instance == null) {
+			instance = new DirectorySizes();
+			DirectoryWatcher.getInstance().addListener(instance);
+		}
+		return instance;
+	}
+
+	/**
+	 * Cancels the running computations and releases the default instance.
+	 */
+	public static synchronized void shutdown() {
+		if (instance != null) {
+			DirectoryWatcher.getInstance().removeListener(instance);
+			instance.cancelAll();
+			instance.pool.shutdownNow();
+			instance = null;
+		}
+	}
+
+	/**
+	 * Formats the given size with a binary unit, e.g. <code>1.5 MB</code>.
+	 * 
+	 * @param size
+	 *            the size in bytes.
+	 * @return the formatted size.
+	 */
+	public static String formatSize(final long size) {
+		final String[] units = { "bytes", "KB", "MB", "GB", "TB" }; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+		double value = size;
+		int unit = 0;
+		while (value >= 1024 && unit < units.length - 1) {
+			value /= 1024;
+			unit++;
+		}
+		final String pattern = unit == 0 ? "#,##0" : "#,##0.#"; //$NON-NLS-1$ //$NON-NLS-2$
+		return new DecimalFormat(pattern).format(value) + " " + units[unit]; //$NON-NLS-1$
+	}
+
+	/*
+	 * the cached directories
+	 */
+	private final Map<File, Node> nodes = new HashMap<File, Node>();
+
+	/*
+	 * the directories registered with the watcher by this instance
+	 */
+	private final Set<File> watched = new HashSet<File>();
+
+	/*
+	 * the running computations, by root
+	 */
+	private final Map<File, Job> jobs = new HashMap<File, Job>();
+
+	/*
+	 * the roots changed while their computation was running
+	 */
+	private final Set<File> updates = new HashSet<File>();
+
+	/*
+	 * the totals not notified yet and the time of the last notification
+	 */
+	private final Set<File> changed = new HashSet<File>();
+	private long notified;
+
+	/*
+	 * the listeners
+	 */
+	private final List<ISizeListener> listeners = new CopyOnWriteArrayList<ISizeListener>();
+
+	/*
+	 * the pool walking the trees; its workers are daemon threads
+	 */
+	private final ForkJoinPool pool = new ForkJoinPool();
+
+	/**
+	 * Adds the given size listener.
+	 * 
+	 * @param listener
+	 *            the listener to add.
+	 */
+	public void addSizeListener(final ISizeListener listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * Removes the given size listener.
+	 * 
+	 * @param listener
+	 *            the listener to remove.
+	 */
+	public void removeSizeListener(final ISizeListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Gets the total size of the given directory.
+	 * 
+	 * @param directory
+	 *            the directory.
+	 * @return the last computed total in bytes, possibly being updated, or -1
+	 *         if not computed.
+	 */
+	public synchronized long getSize(final File directory) {
+		final Node node = nodes.get(directory);
+		return node == null ? -1 : node.total;
+	}
+
+	/**
+	 * Returns whether the total of the given directory or of one of its
+	 * ancestors is being computed.
+	 * 
+	 * @param directory
+	 *            the directory.
+	 * @return <code>true</code> if a computation is running.
+	 */
+	public synchronized boolean isComputing(final File directory) {
+		for (File current = directory; current != null; current = current
+				.getParentFile()) {
+			if (jobs.containsKey(current)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Computes the total of the given directory and its subdirectories in the
+	 * background, unless already running. The job is shown to the user and
+	 * can be cancelled.
+	 * 
+	 * @param directory
+	 *            the directory.
+	 * @return <code>true</code> if the computation has been started,
+	 *         <code>false</code> if already running.
+	 */
+	public boolean compute(final File directory) {
+		return schedule(directory, false, 0);
+	}
+
+	/**
+	 * Cancels the computation of the given directory, if running. The totals
+	 * computed so far are kept.
+	 * 
+	 * @param directory
+	 *            the directory.
+	 */
+	public synchronized void cancel(final File directory) {
+		final Job job = jobs.remove(directory);
+		if (job != null) {
+			job.cancel();
+		}
+	}
+
+	/**
+	 * Cancels all the running computations.
+	 */
+	public synchronized void cancelAll() {
+		for (final Job job : jobs.values()) {
+			job.cancel();
+		}
+		jobs.clear();
+		updates.clear();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see nu.bibi.breadcrumb.files.DirectoryWatcher.Listener#directoryChanged(java.io.File)
+	 */
+	@Override
+	public void directoryChanged(final File directory) {
+		File root = null;
+		synchronized (this) {
+			final Node node = nodes.get(directory);
+			if (node == null) {
+				return;
+			}
+			node.own = -1;
+			for (File current = directory; current != null; current = current
+					.getParentFile()) {
+				final Node ancestor = nodes.get(current);
+				if (ancestor == null) {
+					break;
+				}
+				ancestor.summed = false;
+				root = current;
+			}
+		}
+		// sum the changed path again, the other subtrees are cached
+		schedule(root, true, UPDATE_DELAY);
+	}
+
+	/**
+	 * Schedules the computation of the given directory.
+	 * 
+	 * @return <code>false</code> if already running.
+	 */
+	private synchronized boolean schedule(final File directory,
+			final boolean system, final long delay) {
+		if (jobs.containsKey(directory)) {
+			if (system) {
+				// the running job may have passed the change
+				updates.add(directory);
+			}
+			return false;
+		}
+		final Job job = new Job(directory.getAbsolutePath()) {
+			@Override
+			protected IStatus run(final IProgressMonitor monitor) {
+				monitor.beginTask(getName(), IProgressMonitor.UNKNOWN);
+				try {
+					pool.invoke(new SizeTask(directory, monitor, !system));
+				} finally {
+					synchronized (DirectorySizes.this) {
+						if (jobs.get(directory) == this) {
+							jobs.remove(directory);
+						}
+						if (monitor.isCanceled()) {
+							release(directory);
+						}
+						if (updates.remove(directory)) {
+							DirectorySizes.this.schedule(directory, true, UPDATE_DELAY);
+						}
+					}
+					notifyListeners(true);
+					monitor.done();
+				}
+				return monitor.isCanceled() ? Status.CANCEL_STATUS
+						: Status.OK_STATUS;
+			}
+		};
+		job.setSystem(system);
+		job.setPriority(Job.LONG);
+		jobs.put(directory, job);
+		job.schedule(delay);
+		return true;
+	}
+
+	/*
+	 * Computes the total of a directory, forking a task per subdirectory
+	 */
+	private class SizeTask extends RecursiveTask<Long> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final File directory;
+		private final IProgressMonitor monitor;
+
+		/*
+		 * whether the directories not watched are listed again
+		 */
+		private final boolean verify;
+
+		SizeTask(final File directory, final IProgressMonitor monitor,
+				final boolean verify) {
+			this.directory = directory;
+			this.monitor = monitor;
+			this.verify = verify;
+		}
+
+		@Override
+		protected Long compute() {
+			if (monitor.isCanceled()) {
+				return Long.valueOf(-1);
+			}
+
+			// up to date ?
+			long own;
+			File[] directories;
+			synchronized (DirectorySizes.this) {
+				final Node node = getNode(directory);
+				if (node.summed && (!verify || isWatched(directory))) {
+					return Long.valueOf(node.total);
+				}
+				own = node.own;
+				directories = node.directories;
+			}
+
+			// list the directory, unless only a subtree changed
+			if (own < 0 || directories == null || verify
+					&& !isWatched(directory)) {
+				final List<File> listed = new ArrayList<File>();
+				own = list(directory, listed);
+				directories = listed.toArray(new File[listed.size()]);
+				watch(directory);
+				synchronized (DirectorySizes.this) {
+					final Node node = getNode(directory);
+					if (node.directories != null) {
+						prune(node.directories, listed);
+					}
+					node.own = own;
+					node.directories = directories;
+				}
+			}
+
+			// sum the subdirectories
+			final List<SizeTask> tasks = new ArrayList<SizeTask>(
+					directories.length);
+			for (final File child : directories) {
+				tasks.add(new SizeTask(child, monitor, verify));
+			}
+			long total = own;
+			for (final SizeTask task : invokeAll(tasks)) {
+				final long size = task.join().longValue();
+				if (size < 0) {
+					// cancelled
+					return Long.valueOf(-1);
+				}
+				total += size;
+			}
+
+			synchronized (DirectorySizes.this) {
+				final Node node = getNode(directory);
+				node.total = total;
+				node.summed = node.own >= 0;
+				changed.add(directory);
+			}
+			monitor.subTask(directory.getPath());
+			notifyListeners(false);
+			return Long.valueOf(total);
+		}
+	}
+
+	/**
+	 * Gets the node of the given directory, creating it if needed. The caller
+	 * must hold the lock.
+	 */
+	private Node getNode(final File directory) {
+		Node node = nodes.get(directory);
+		if (node == null) {
+			node = new Node();
+			nodes.put(directory, node);
+		}
+		return node;
+	}
+
+	/**
+	 * Drops the nodes of the old subdirectories no longer listed. The caller
+	 * must hold the lock.
+	 */
+	private void prune(final File[] old, final List<File> listed) {
+		final Set<File> current = new HashSet<File>(listed);
+		for (final File directory : old) {
+			if (!current.contains(directory)) {
+				remove(directory);
+			}
+		}
+	}
+
+	/**
+	 * Removes the node of the given directory and its subdirectories. The
+	 * caller must hold the lock.
+	 */
+	private void remove(final File directory) {
+		if (watched.remove(directory)) {
+			DirectoryWatcher.getInstance().unwatch(directory, this);
+		}
+		final Node node = nodes.remove(directory);
+		if (node != null && node.directories != null) {
+			for (final File child : node.directories) {
+				remove(child);
+			}
+		}
+	}
+
+	/**
+	 * Returns whether changes of the given directory are notified, as long as
+	 * this instance does not release it.
+	 */
+	private boolean isWatched(final File directory) {
+		return DirectoryWatcher.getInstance().isWatched(directory, this);
+	}
+
+	/**
+	 * Stops watching the directories of the given tree registered by this
+	 * instance, unless another computation uses them. The cached totals are
+	 * kept. The caller must hold the lock.
+	 */
+	private void release(final File root) {
+		final Iterator<File> iterator = watched.iterator();
+		while (iterator.hasNext()) {
+			final File directory = iterator.next();
+			if (isAncestor(root, directory) && !isComputing(directory)) {
+				iterator.remove();
+				DirectoryWatcher.getInstance().unwatch(directory, this);
+			}
+		}
+	}
+
+	/**
+	 * Returns whether the given directory is the given root or one of its
+	 * descendants.
+	 */
+	private static boolean isAncestor(final File root, final File directory) {
+		for (File current = directory; current != null; current = current
+				.getParentFile()) {
+			if (current.equals(root)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Registers the given directory with the watcher on behalf of this
+	 * instance, within the limit. The watcher counts its owners, so the
+	 * directories also watched by other clients are not released by them.
+	 */
+	private void watch(final File directory) {
+		final DirectoryWatcher watcher = DirectoryWatcher.getInstance();
+		synchronized (this) {
+			if (watched.contains(directory)
+					&& watcher.isWatched(directory, this)) {
+				return;
+			}
+			if (watched.size() >= MAX_WATCHED) {
+				// forget the directories dropped by the watcher
+				final Iterator<File> iterator = watched.iterator();
+				while (iterator.hasNext()) {
+					if (!watcher.isWatched(iterator.next(), this)) {
+						iterator.remove();
+					}
+				}
+				if (watched.size() >= MAX_WATCHED) {
+					return;
+				}
+			}
+		}
+		if (watcher.watch(directory, this)) {
+			synchronized (this) {
+				watched.add(directory);
+			}
+		}
+	}
+
+	/**
+	 * Lists the given directory without following links.
+	 * 
+	 * @param directory
+	 *            the directory.
+	 * @param directories
+	 *            the list receiving the subdirectories.
+	 * @return the total size of the other entries.
+	 */
+	private static long list(final File directory, final List<File> directories) {
+		final Path start = directory.toPath();
+		final long[] own = { 0 };
+		try {
+			Files.walkFileTree(start, Collections.<FileVisitOption> emptySet(),
+					1, new SimpleFileVisitor<Path>() {
+						@Override
+						public FileVisitResult visitFile(final Path file,
+								final BasicFileAttributes attrs) {
+							if (file.equals(start)) {
+								return FileVisitResult.TERMINATE;
+							}
+							if (attrs.isDirectory()) {
+								directories.add(new File(directory, file
+										.getFileName().toString()));
+							} else {
+								own[0] += attrs.size();
+							}
+							return FileVisitResult.CONTINUE;
+						}
+
+						@Override
+						public FileVisitResult visitFileFailed(final Path file,
+								final IOException exc) {
+							return FileVisitResult.CONTINUE;
+						}
+					});
+		} catch (final IOException e) {
+			// count what has been read
+		}
+		return own[0];
+	}
+
+	/**
+	 * Notifies the listeners of the changed totals.
+	 * 
+	 * @param force
+	 *            <code>true</code> to notify even if the last notification
+	 *            is recent.
+	 */
+	private void notifyListeners(final boolean force) {
+		final File[] directories;
+		synchronized (this) {
+			final long now = System.currentTimeMillis();
+			if (changed.isEmpty()
+					|| (!force && now - notified < NOTIFY_INTERVAL)) {
+				return;
+			}
+			notified = now;
+			directories = changed.toArray(new File[changed.size()]);
+			changed.clear();
+		}
+		for (final ISizeListener listener : listeners) {
+			listener.sizesChanged(directories);
+		}
+	}
+}
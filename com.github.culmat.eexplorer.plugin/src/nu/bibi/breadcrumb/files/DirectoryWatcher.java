@@ -0,0 +1,331 @@
+/*******************************************************************************
+ * Copyright (c) 2008 Laurent Muller.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     Laurent Muller - initial API and implementation
+ *******************************************************************************/
+package nu.bibi.breadcrumb.files;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Watches directories for changes with a {@link WatchService} and notifies
+ * the registered listeners. A single daemon thread serves all the watched
+ * directories.
+ * <p>
+ * A directory is watched on behalf of one or more owners and only unregistered
+ * once the last of them stops watching it, so that clients sharing the
+ * watcher do not release each other's directories. The listeners are notified
+ * of the changes of all the watched directories, whatever their owners.
+ * </p>
+ * 
+ * @author Laurent Muller
+ * @version 1.0
+ */
+public class DirectoryWatcher {
+
+	/**
+	 * A listener notified when the content of a watched directory changes.
+	 */
+	public interface Listener {
+
+		/**
+		 * Notifies that the content of the given directory has changed. This
+		 * method is called from the watcher thread.
+		 * 
+		 * @param directory
+		 *            the changed directory, as registered.
+		 */
+		void directoryChanged(File directory);
+	}
+
+	/*
+	 * the singleton instance
+	 */
+	private static DirectoryWatcher instance;
+
+	/**
+	 * Returns the singleton instance.
+	 * 
+	 * @return the singleton instance.
+	 */
+	public static synchronized DirectoryWatcher getInstance() {
+		if (instance == null) {
+			instance = new DirectoryWatcher();
+		}
+		return instance;
+	}
+
+	/**
+	 * Stops the watcher thread, if any, and releases all the watch keys.
+	 */
+	public static synchronized void shutdown() {
+		if (instance != null) {
+			instance.close();
+			instance = null;
+		}
+	}
+
+	/*
+	 * the watch service, null if not created or not supported
+	 */
+	private WatchService service;
+
+	/*
+	 * the unsupported flag
+	 */
+	private boolean unsupported;
+
+	/*
+	 * the registered keys
+	 */
+	private final Map<File, WatchKey> keys = new HashMap<File, WatchKey>();
+	private final Map<WatchKey, File> directories = new HashMap<WatchKey, File>();
+
+	/*
+	 * the owners of the watched directories
+	 */
+	private final Map<File, Set<Object>> owners = new HashMap<File, Set<Object>>();
+
+	/*
+	 * the listeners
+	 */
+	private final List<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+
+	/*
+	 * Prevents instance creation
+	 */
+	private DirectoryWatcher() {
+	}
+
+	/**
+	 * Adds the given listener.
+	 * 
+	 * @param listener
+	 *            the listener to add.
+	 */
+	public void addListener(final Listener listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * Returns whether the given directory is watched.
+	 * 
+	 * @param directory
+	 *            the directory.
+	 * @return <code>true</code> if change notifications are received for the
+	 *         directory.
+	 */
+	public synchronized boolean isWatched(final File directory) {
+		return keys.containsKey(directory);
+	}
+
+	/**
+	 * Returns whether the given directory is watched on behalf of the given
+	 * owner.
+	 * 
+	 * @param directory
+	 *            the directory.
+	 * @param owner
+	 *            the owner.
+	 * @return <code>true</code> if the owner watches the directory.
+	 */
+	public synchronized boolean isWatched(final File directory,
+			final Object owner) {
+		final Set<Object> set = owners.get(directory);
+		return set != null && set.contains(owner);
+	}
+
+	/**
+	 * Removes the given listener.
+	 * 
+	 * @param listener
+	 *            the listener to remove.
+	 */
+	public void removeListener(final Listener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Stops watching the given directory on behalf of the given owner. The
+	 * directory is unregistered once no owner watches it anymore.
+	 * 
+	 * @param directory
+	 *            the directory.
+	 * @param owner
+	 *            the owner.
+	 */
+	public synchronized void unwatch(final File directory, final Object owner) {
+		final Set<Object> set = owners.get(directory);
+		if (set == null || !set.remove(owner) || !set.isEmpty()) {
+			return;
+		}
+		owners.remove(directory);
+		final WatchKey key = keys.remove(directory);
+		if (key != null) {
+			directories.remove(key);
+			key.cancel();
+		}
+	}
+
+	/**
+	 * Starts watching the given directory on behalf of the given owner. The
+	 * directory is registered only once, whatever the number of owners.
+	 * 
+	 * @param directory
+	 *            the directory to watch.
+	 * @param owner
+	 *            the owner, passed again to stop watching.
+	 * @return <code>true</code> if the directory is watched,
+	 *         <code>false</code> if the file system does not support change
+	 *         notifications for it.
+	 */
+	public synchronized boolean watch(final File directory, final Object owner) {
+		if (!keys.containsKey(directory) && !register(directory)) {
+			return false;
+		}
+		Set<Object> set = owners.get(directory);
+		if (set == null) {
+			set = new HashSet<Object>();
+			owners.put(directory, set);
+		}
+		set.add(owner);
+		return true;
+	}
+
+	/**
+	 * Registers the given directory with the watch service. The caller must
+	 * hold the lock.
+	 */
+	private boolean register(final File directory) {
+		final WatchService watchService = getService();
+		if (watchService == null) {
+			return false;
+		}
+		try {
+			final WatchKey key = directory.toPath().register(watchService,
+					ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+			keys.put(directory, key);
+			directories.put(key, directory);
+			return true;
+		} catch (final IOException e) {
+			return false;
+		} catch (final UnsupportedOperationException e) {
+			return false;
+		} catch (final ClosedWatchServiceException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Closes the watch service.
+	 */
+	private synchronized void close() {
+		keys.clear();
+		directories.clear();
+		owners.clear();
+		if (service != null) {
+			try {
+				service.close();
+			} catch (final IOException e) {
+				// ignore
+			}
+			service = null;
+		}
+	}
+
+	/**
+	 * Notifies the listeners.
+	 */
+	private void fireDirectoryChanged(final File directory) {
+		for (final Listener listener : listeners) {
+			try {
+				listener.directoryChanged(directory);
+			} catch (final RuntimeException e) {
+				// a faulty listener must not stop the watcher
+			}
+		}
+	}
+
+	/**
+	 * Gets the watch service, creating it and the watcher thread on first
+	 * use.
+	 * 
+	 * @return the watch service or <code>null</code> if not supported.
+	 */
+	private WatchService getService() {
+		if (service == null && !unsupported) {
+			try {
+				service = FileSystems.getDefault().newWatchService();
+			} catch (final IOException e) {
+				unsupported = true;
+				return null;
+			} catch (final UnsupportedOperationException e) {
+				unsupported = true;
+				return null;
+			}
+			final WatchService watchService = service;
+			final Thread thread = new Thread("Directory Watcher") { //$NON-NLS-1$
+				@Override
+				public void run() {
+					processEvents(watchService);
+				}
+			};
+			thread.setDaemon(true);
+			thread.start();
+		}
+		return service;
+	}
+
+	/**
+	 * Waits for and dispatches the change events until the service is
+	 * closed.
+	 */
+	private void processEvents(final WatchService watchService) {
+		for (;;) {
+			final WatchKey key;
+			try {
+				key = watchService.take();
+			} catch (final InterruptedException e) {
+				return;
+			} catch (final ClosedWatchServiceException e) {
+				return;
+			}
+
+			// all events of the key are reported once
+			key.pollEvents();
+			final File directory;
+			synchronized (this) {
+				directory = directories.get(key);
+				if (!key.reset() && directory != null) {
+					// no longer accessible, the owners must watch it again
+					keys.remove(directory);
+					directories.remove(key);
+					owners.remove(directory);
+				}
+			}
+			if (directory != null) {
+				fireDirectoryChanged(directory);
+			}
+		}
+	}
+}
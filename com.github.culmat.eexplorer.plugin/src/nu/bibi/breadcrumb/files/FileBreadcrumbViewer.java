@@ -31,7 +31,7 @@ import nu.bibi.breadcrumb.BreadcrumbViewer;
  * <ul>
  * <li>Content provider: {@link FileContentProvider#DEFAULT}</li>
  * <li>Label provider: {@link FileLabelProvider}</li>
- * <li>Viewer comparator: {@link FileViewerComparator#DEFAULT}</li>
+ * <li>Viewer comparator: {@link FileViewerComparator#BY_NAME}</li>
  * </ul>
  * 
  * @see Computer
@@ -46,6 +46,11 @@ public class FileBreadcrumbViewer extends BreadcrumbViewer {
 	 */
 	private final ImageFileRegistry registry;
 
+	/*
+	 * the show sizes flag
+	 */
+	private boolean showSizes;
+
 	/**
 	 * Create a new <code>FileBreadcrumbViewer</code>.
 	 * <p>
@@ -74,7 +79,7 @@ public class FileBreadcrumbViewer extends BreadcrumbViewer {
 		
 		setLabelProvider(new FileLabelProvider(registry));
 		setContentProvider(new FileContentProvider());
-		setComparator(FileViewerComparator.DEFAULT);
+		setComparator(FileViewerComparator.BY_NAME);
 		setToolTipLabelProvider(getLabelProvider());
 	}
 
@@ -87,6 +92,38 @@ public class FileBreadcrumbViewer extends BreadcrumbViewer {
 		return registry;
 	}
 
+	/**
+	 * Returns whether the drop downs show the total size of the directories.
+	 * 
+	 * @return <code>true</code> if the sizes are shown.
+	 */
+	public boolean isShowSizes() {
+		return showSizes;
+	}
+
+	/**
+	 * Sets whether the drop downs show the total size of the directories.
+	 * When set, opening a drop down computes the sizes of its directories in
+	 * the background, until the drop down is closed.
+	 * 
+	 * @param showSizes
+	 *            <code>true</code> to show the sizes.
+	 * @see DirectorySizes
+	 */
+	public void setShowSizes(final boolean showSizes) {
+		this.showSizes = showSizes;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see nu.bibi.breadcrumb.BreadcrumbViewer#getDropDownStyle()
+	 */
+	@Override
+	protected int getDropDownStyle() {
+		// materialize only the visible items of huge directories
+		return SWT.VIRTUAL;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see nu.bibi.breadcrumb.BreadcrumbViewer#configureDropDownViewer(org.eclipse.jface.viewers.TreeViewer, java.lang.Object)
@@ -94,11 +131,28 @@ public class FileBreadcrumbViewer extends BreadcrumbViewer {
 	@Override
 	protected void configureDropDownViewer(final TreeViewer viewer,
 			final Object input) {
-		// copy values
-		viewer.setContentProvider(getContentProvider());
-		viewer.setLabelProvider(getLabelProvider());
-		viewer.setComparator(getComparator());
-		viewer.setFilters(getFilters());
+		// copy values; the virtual drop down lists, filters and sorts its
+		// children in the background
+		viewer.setContentProvider(new LazyFileContentProvider(getFilters(),
+				getComparator()));
+		// the drop down disposes its label provider when it closes, so it
+		// must not get the one of the breadcrumb
+		if (showSizes && input instanceof File) {
+			viewer.setLabelProvider(new FileSizeLabelProvider(registry,
+					viewer.getControl().getDisplay()));
+			final File directory = (File) input;
+			if (DirectorySizes.getDefault().compute(directory)) {
+				// the drop down of a root would walk the whole disk
+				viewer.getControl().addListener(SWT.Dispose, new Listener() {
+					@Override
+					public void handleEvent(final Event event) {
+						DirectorySizes.getDefault().cancel(directory);
+					}
+				});
+			}
+		} else {
+			viewer.setLabelProvider(new FileLabelProvider(registry));
+		}
 		viewer.setSelection(getSelection());
 		ColumnViewerToolTipSupport.enableFor(viewer);
 	}
@@ -4,14 +4,16 @@
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
  * http://www.eclipse.org/legal/epl-v10.html
- *
+ * 
  * Contributors:
  *     Laurent Muller - initial API and implementation
  *******************************************************************************/
 package nu.bibi.breadcrumb.files;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 import org.eclipse.jface.viewers.ITreeContentProvider;
 import org.eclipse.jface.viewers.StructuredViewer;
@@ -20,6 +22,11 @@ import org.eclipse.jface.viewers.ViewerFilter;
 
 /**
  * File content provider.
+ * <p>
+ * Directories are listed in the calling thread, from the
+ * {@link DirectoryCache} when possible. Virtual drop downs use the
+ * {@link LazyFileContentProvider}, which lists in the background.
+ * </p>
  * 
  * @author Laurent Muller
  * @version 1.0
@@ -36,6 +43,11 @@ public class FileContentProvider implements ITreeContentProvider {
 	 */
 	private StructuredViewer viewer;
 
+	/*
+	 * the directory probe used by hasChildren
+	 */
+	private final DirectoryProbe probe = new DirectoryProbe();
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -52,28 +64,7 @@ public class FileContentProvider implements ITreeContentProvider {
 	 */
 	@Override
 	public Object[] getChildren(final Object parentElement) {
-		// computer ?
-		if (parentElement instanceof Computer) {
-			return ((Computer) parentElement).getDrives();
-		}
-
-		// file ?
-		if (parentElement instanceof File) {
-			// get children
-			final File file = (File) parentElement;
-			Object[] elements = file.listFiles();
-
-			// apply filters
-			elements = applyFilters(parentElement, elements);
-
-			// sort
-			Arrays.sort(elements);
-
-			return elements;
-		}
-
-		// no data
-		return new Object[0];
+		return listChildren(parentElement);
 	}
 
 	/*
@@ -110,7 +101,12 @@ public class FileContentProvider implements ITreeContentProvider {
 	 */
 	@Override
 	public boolean hasChildren(final Object element) {
-		return this.getChildren(element).length > 0;
+		if (element instanceof File) {
+			final ViewerFilter[] filters = viewer == null ? null : viewer
+					.getFilters();
+			return probe.hasChildren((File) element, viewer, filters);
+		}
+		return listChildren(element).length > 0;
 	}
 
 	/*
@@ -121,6 +117,7 @@ public class FileContentProvider implements ITreeContentProvider {
 	@Override
 	public void inputChanged(final Viewer viewer, final Object oldInput,
 			final Object newInput) {
+		probe.clear();
 		if (viewer != null && viewer instanceof StructuredViewer) {
 			this.viewer = (StructuredViewer) viewer;
 		} else {
@@ -146,7 +143,7 @@ public class FileContentProvider implements ITreeContentProvider {
 		// data ?
 		if (elements == null || elements.length == 0) {
 			return new Object[0];
-		}		
+		}
 		if (viewer == null) {
 			return elements;
 		}
@@ -166,4 +163,62 @@ public class FileContentProvider implements ITreeContentProvider {
 		}
 		return elements;
 	}
+
+	/**
+	 * Lists, filters and sorts the children of the given element in the
+	 * calling thread.
+	 * 
+	 * @param parentElement
+	 *            the parent element.
+	 * @return the children, never <code>null</code>.
+	 */
+	protected Object[] listChildren(final Object parentElement) {
+		// computer ?
+		if (parentElement instanceof Computer) {
+			return ((Computer) parentElement).getDrives();
+		}
+
+		// file ?
+		if (parentElement instanceof File) {
+			// get children
+			final File file = (File) parentElement;
+			final DirectoryCache cache = DirectoryCache.getDefault();
+			File[] files = cache.get(file);
+			if (files == null) {
+				final DirectoryCache.Ticket ticket = cache.watch(file);
+				final List<FileEntry> entries = new ArrayList<FileEntry>();
+				final boolean complete = FileUtils.listEntries(file,
+						new FileUtils.EntryVisitor() {
+							@Override
+							public boolean visit(final FileEntry entry) {
+								entries.add(entry);
+								return true;
+							}
+						});
+				final FileEntry[] listed = entries
+						.toArray(new FileEntry[entries.size()]);
+				if (complete) {
+					// the elements may be sorted below
+					cache.put(ticket, listed.clone());
+				} else {
+					cache.cancel(ticket);
+				}
+				files = listed;
+			}
+			Object[] elements = files;
+
+			// apply filters
+			elements = applyFilters(parentElement, elements);
+
+			// sort, unless the viewer sorts
+			if (viewer == null || viewer.getComparator() == null) {
+				Arrays.sort(elements);
+			}
+
+			return elements;
+		}
+
+		// no data
+		return new Object[0];
+	}
 }
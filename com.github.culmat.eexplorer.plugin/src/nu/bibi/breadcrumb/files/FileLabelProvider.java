@@ -11,12 +11,24 @@
 package nu.bibi.breadcrumb.files;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.eclipse.jface.viewers.ColumnLabelProvider;
+import org.eclipse.jface.viewers.LabelProviderChangedEvent;
 import org.eclipse.swt.graphics.Image;
 
 /**
  * File label provider
+ * <p>
+ * Files whose program image is not yet resolved get a default image; once
+ * the registry has resolved it, a single label provider changed event is
+ * fired for all the waiting files so that the viewers update their items.
+ * </p>
  * 
  * @author Laurent Muller
  * @version 1.0
@@ -28,6 +40,32 @@ public class FileLabelProvider extends ColumnLabelProvider {
 	 */
 	private final ImageFileRegistry registry;
 
+	/*
+	 * the files shown with a default image, by extension (display thread
+	 * only)
+	 */
+	private final Map<String, Set<File>> waiting = new HashMap<String, Set<File>>();
+
+	/*
+	 * the registry listener
+	 */
+	private final ImageFileRegistry.IImageListener imageListener = new ImageFileRegistry.IImageListener() {
+		@Override
+		public void imagesResolved(final String[] extensions) {
+			final List<File> files = new ArrayList<File>();
+			for (final String extension : extensions) {
+				final Set<File> set = waiting.remove(extension);
+				if (set != null) {
+					files.addAll(set);
+				}
+			}
+			if (!files.isEmpty()) {
+				fireLabelProviderChanged(new LabelProviderChangedEvent(
+						FileLabelProvider.this, files.toArray()));
+			}
+		}
+	};
+
 	/**
 	 * Create a new instance of this class with the given image file registry.
 	 * 
@@ -36,6 +74,23 @@ public class FileLabelProvider extends ColumnLabelProvider {
 	 */
 	protected FileLabelProvider(final ImageFileRegistry registry) {
 		this.registry = registry;
+		if (registry != null) {
+			registry.addImageListener(imageListener);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.eclipse.jface.viewers.BaseLabelProvider#dispose()
+	 */
+	@Override
+	public void dispose() {
+		if (registry != null) {
+			registry.removeImageListener(imageListener);
+		}
+		waiting.clear();
+		super.dispose();
 	}
 
 	/*
@@ -54,7 +109,18 @@ public class FileLabelProvider extends ColumnLabelProvider {
 		}
 
 		if (element instanceof File) {
-			return registry.get((File) element);
+			final File file = (File) element;
+			final Image image = registry.get(file);
+			if (registry.isPending(file)) {
+				final String extension = ImageFileRegistry.getExtension(file);
+				Set<File> set = waiting.get(extension);
+				if (set == null) {
+					set = new LinkedHashSet<File>();
+					waiting.put(extension, set);
+				}
+				set.add(file);
+			}
+			return image;
 		}
 		return super.getImage(element);
 	}
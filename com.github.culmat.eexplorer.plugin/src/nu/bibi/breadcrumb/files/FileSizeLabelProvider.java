@@ -0,0 +1,95 @@
+/*******************************************************************************
+ * Copyright (c) 2008 Laurent Muller.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     Laurent Muller - initial API and implementation
+ *******************************************************************************/
+package nu.bibi.breadcrumb.files;
+
+import java.io.File;
+
+import org.eclipse.jface.viewers.LabelProviderChangedEvent;
+import org.eclipse.swt.widgets.Display;
+
+/**
+ * File label provider appending the total size of the directories, as known
+ * by the {@link DirectorySizes}. The labels are updated while the sizes are
+ * computed.
+ * 
+ * @author Laurent Muller
+ * @version 1.0
+ */
+public class FileSizeLabelProvider extends FileLabelProvider {
+
+	/*
+	 * the display thread
+	 */
+	private final Display display;
+
+	/*
+	 * the size listener
+	 */
+	private final ISizeListener sizeListener = new ISizeListener() {
+		@Override
+		public void sizesChanged(final File[] directories) {
+			if (display.isDisposed()) {
+				return;
+			}
+			display.asyncExec(new Runnable() {
+				@Override
+				public void run() {
+					fireLabelProviderChanged(new LabelProviderChangedEvent(
+							FileSizeLabelProvider.this, directories));
+				}
+			});
+		}
+	};
+
+	/**
+	 * Create a new instance of this class.
+	 * 
+	 * @param registry
+	 *            the image registry used to display images.
+	 * @param display
+	 *            the display thread.
+	 */
+	public FileSizeLabelProvider(final ImageFileRegistry registry,
+			final Display display) {
+		super(registry);
+		this.display = display;
+		DirectorySizes.getDefault().addSizeListener(sizeListener);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see nu.bibi.breadcrumb.files.FileLabelProvider#dispose()
+	 */
+	@Override
+	public void dispose() {
+		DirectorySizes.getDefault().removeSizeListener(sizeListener);
+		super.dispose();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see nu.bibi.breadcrumb.files.FileLabelProvider#getText(java.lang.Object)
+	 */
+	@Override
+	public String getText(final Object element) {
+		final String text = super.getText(element);
+		if (element instanceof File && ((File) element).isDirectory()) {
+			final long size = DirectorySizes.getDefault().getSize(
+					(File) element);
+			if (size >= 0) {
+				return text + " (" + DirectorySizes.formatSize(size) + ")"; //$NON-NLS-1$ //$NON-NLS-2$
+			}
+		}
+		return text;
+	}
+}
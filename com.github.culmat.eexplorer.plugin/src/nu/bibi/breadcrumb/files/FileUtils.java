@@ -11,9 +11,20 @@
 package nu.bibi.breadcrumb.files;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.EnumSet;
 
 import javax.swing.filechooser.FileSystemView;
 
+import org.eclipse.jface.viewers.Viewer;
+import org.eclipse.jface.viewers.ViewerFilter;
+
 /**
  * File utility
  * 
@@ -21,6 +32,22 @@ import javax.swing.filechooser.FileSystemView;
  */
 public class FileUtils {
 
+	/**
+	 * A visitor receiving the entries of a directory.
+	 */
+	public interface EntryVisitor {
+
+		/**
+		 * Visits an entry.
+		 * 
+		 * @param entry
+		 *            the entry with its attributes.
+		 * @return <code>true</code> to continue, <code>false</code> to stop
+		 *         reading the directory.
+		 */
+		boolean visit(FileEntry entry);
+	}
+
 	/**
 	 * Gets the drive name from the file system view.
 	 * 
@@ -67,6 +94,74 @@ public class FileUtils {
 		}
 	}
 
+	/**
+	 * Reads the children of the given directory with their attributes. The
+	 * attributes are read during the directory walk, following symbolic
+	 * links; on Windows they come with the directory entries at no extra
+	 * cost.
+	 * 
+	 * @param directory
+	 *            the directory to read.
+	 * @param visitor
+	 *            the visitor receiving the entries.
+	 * @return <code>true</code> if all the children have been visited,
+	 *         <code>false</code> if the visitor stopped or the directory
+	 *         could not be read.
+	 */
+	public static boolean listEntries(final File directory,
+			final EntryVisitor visitor) {
+		final Path start = directory.toPath();
+		final boolean[] complete = { true };
+		try {
+			Files.walkFileTree(start, EnumSet.of(FileVisitOption.FOLLOW_LINKS),
+					1, new SimpleFileVisitor<Path>() {
+						@Override
+						public FileVisitResult visitFile(final Path file,
+								final BasicFileAttributes attrs) {
+							if (file.equals(start)) {
+								// not a directory
+								complete[0] = false;
+								return FileVisitResult.TERMINATE;
+							}
+							return visit(new FileEntry(directory, file
+									.getFileName().toString(), attrs));
+						}
+
+						@Override
+						public FileVisitResult visitFileFailed(final Path file,
+								final IOException exc) {
+							if (file.equals(start)) {
+								complete[0] = false;
+								return FileVisitResult.TERMINATE;
+							}
+							// e.g. broken link
+							return visit(new FileEntry(directory, file
+									.getFileName().toString(), null));
+						}
+
+						@Override
+						public FileVisitResult postVisitDirectory(
+								final Path dir, final IOException exc) {
+							if (exc != null) {
+								complete[0] = false;
+							}
+							return FileVisitResult.CONTINUE;
+						}
+
+						private FileVisitResult visit(final FileEntry entry) {
+							if (visitor.visit(entry)) {
+								return FileVisitResult.CONTINUE;
+							}
+							complete[0] = false;
+							return FileVisitResult.TERMINATE;
+						}
+					});
+		} catch (final IOException e) {
+			return false;
+		}
+		return complete[0];
+	}
+
 	/**
 	 * Gets a value indicating if the specified file is the drive file.
 	 * 
@@ -82,6 +177,35 @@ public class FileUtils {
 		return true;
 	}
 
+	/**
+	 * Gets a value indicating if the specified element passes all the given
+	 * filters.
+	 * 
+	 * @param viewer
+	 *            the viewer passed to the filters, may be <code>null</code>.
+	 * @param filters
+	 *            the filters to apply, may be <code>null</code>.
+	 * @param parent
+	 *            the parent element.
+	 * @param element
+	 *            the element to be tested.
+	 * @return <code>true</code> if the element is selected by all filters,
+	 *         <code>false</code> otherwise.
+	 */
+	public static boolean select(final Viewer viewer,
+			final ViewerFilter[] filters, final Object parent,
+			final Object element) {
+		if (filters == null) {
+			return true;
+		}
+		for (final ViewerFilter filter : filters) {
+			if (!filter.select(viewer, parent, element)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
 	/*
 	 * prevent instance creation
 	 */
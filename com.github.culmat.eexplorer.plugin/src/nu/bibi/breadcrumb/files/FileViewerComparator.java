@@ -11,6 +11,9 @@
 package nu.bibi.breadcrumb.files;
 
 import java.io.File;
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.Arrays;
 
 import org.eclipse.jface.viewers.Viewer;
 import org.eclipse.jface.viewers.ViewerComparator;
@@ -26,7 +29,14 @@ import org.eclipse.jface.viewers.ViewerComparator;
  * </ul>
  * If the two categories are equals; this comparator uses the file absolute path
  * property (<code>File.getAbsolutePath()</code> to compare values; ignoring
- * case differences.
+ * case differences. The category of a {@link FileEntry} is computed from its
+ * attributes without accessing the file system.
+ * <p>
+ * The {@link #COLLATION} and {@link #NATURAL} modes compare the file names
+ * instead. When sorting, they compute the category and the name key of each
+ * element once, then sort the keys; large arrays are sorted in parallel.
+ * Single comparisons compare the names directly, without building keys.
+ * </p>
  * 
  * @author Laurent Muller
  * @version 1.0
@@ -38,6 +48,98 @@ public class FileViewerComparator extends ViewerComparator {
 	 */
 	public final static FileViewerComparator DEFAULT = new FileViewerComparator();
 
+	/**
+	 * The mode comparing files by path (default).
+	 */
+	public final static int PATH = 0;
+
+	/**
+	 * The mode comparing file names with the default locale collator, ignoring
+	 * case differences.
+	 */
+	public final static int COLLATION = 1;
+
+	/**
+	 * The mode comparing file names ignoring case differences, numbers being
+	 * compared by value (<code>file2</code> before <code>file10</code>).
+	 */
+	public final static int NATURAL = 2;
+
+	/**
+	 * The number of elements from which keyed sorts run in parallel.
+	 */
+	public final static int PARALLEL_THRESHOLD = 8192;
+
+	/**
+	 * The file viewer comparator instance sorting by name in natural order.
+	 */
+	public final static FileViewerComparator BY_NAME = new FileViewerComparator(
+			NATURAL);
+
+	/*
+	 * A precomputed sort key
+	 */
+	private static class Key implements Comparable<Key> {
+		final int category;
+		final Comparable<Object> name;
+		final Object element;
+
+		@SuppressWarnings("unchecked")
+		Key(final int category, final Comparable<?> name, final Object element) {
+			this.category = category;
+			this.name = (Comparable<Object>) name;
+			this.element = element;
+		}
+
+		@Override
+		public int compareTo(final Key other) {
+			if (category != other.category) {
+				return category - other.category;
+			}
+			if (name == null || other.name == null) {
+				return 0;
+			}
+			return name.compareTo(other.name);
+		}
+	}
+
+	/*
+	 * the comparison mode
+	 */
+	private final int mode;
+
+	/*
+	 * the collator used by compare, from the display thread only
+	 */
+	private Collator collator;
+
+	/**
+	 * Creates a new comparator comparing files by path.
+	 */
+	public FileViewerComparator() {
+		this(PATH);
+	}
+
+	/**
+	 * Creates a new comparator.
+	 * 
+	 * @param mode
+	 *            the comparison mode, one of {@link #PATH},
+	 *            {@link #COLLATION} or {@link #NATURAL}.
+	 */
+	public FileViewerComparator(final int mode) {
+		this.mode = mode;
+	}
+
+	/**
+	 * Gets the comparison mode.
+	 * 
+	 * @return the comparison mode.
+	 */
+	public int getMode() {
+		return mode;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -94,6 +196,15 @@ public class FileViewerComparator extends ViewerComparator {
 			if (file2 == null) {
 				return 1;
 			}
+			if (mode == NATURAL) {
+				return compareNatural(getName(file1), getName(file2));
+			}
+			if (mode == COLLATION) {
+				if (collator == null) {
+					collator = createCollator();
+				}
+				return collator.compare(getName(file1), getName(file2));
+			}
 			return file1.compareTo(file2); 
 //			.getAbsolutePath().compareToIgnoreCase(file2.getAbsolutePath());
 		}
@@ -101,4 +212,190 @@ public class FileViewerComparator extends ViewerComparator {
 		// default
 		return super.compare(viewer, e1, e2);
 	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.eclipse.jface.viewers.ViewerComparator#sort(org.eclipse.jface.viewers.Viewer, java.lang.Object[])
+	 */
+	@Override
+	public void sort(final Viewer viewer, final Object[] elements) {
+		if (mode == PATH) {
+			super.sort(viewer, elements);
+			return;
+		}
+
+		// compute the keys once, with an own collator as sorts may run in
+		// a job
+		final Collator sortCollator = mode == COLLATION ? createCollator()
+				: null;
+		final Key[] keys = new Key[elements.length];
+		for (int i = 0; i < elements.length; i++) {
+			keys[i] = createKey(category(elements[i]), elements[i],
+					sortCollator);
+		}
+
+		// keys are immutable, so they can be compared from any thread
+		if (keys.length >= PARALLEL_THRESHOLD) {
+			Arrays.parallelSort(keys);
+		} else {
+			Arrays.sort(keys);
+		}
+		for (int i = 0; i < keys.length; i++) {
+			elements[i] = keys[i].element;
+		}
+	}
+
+	/**
+	 * Creates a collator ignoring case differences.
+	 */
+	private static Collator createCollator() {
+		final Collator result = Collator.getInstance();
+		result.setStrength(Collator.SECONDARY);
+		return result;
+	}
+
+	/**
+	 * Creates the sort key of the given element.
+	 */
+	private Key createKey(final int category, final Object element,
+			final Collator collator) {
+		if (!(element instanceof File)) {
+			return new Key(category, null, element);
+		}
+		final String name = getName((File) element);
+		if (mode == NATURAL) {
+			return new Key(category, toNaturalKey(name), element);
+		}
+		final CollationKey key = collator.getCollationKey(name);
+		return new Key(category, key, element);
+	}
+
+	/**
+	 * Gets the name of the given file; the path for drives.
+	 */
+	private static String getName(final File file) {
+		final String name = file.getName();
+		return name.length() == 0 ? file.getPath() : name;
+	}
+
+	/**
+	 * Converts the given name to a key comparing numbers by value. Each digit
+	 * run is replaced by its length, without leading zeros, followed by its
+	 * digits; the original name is appended to order names differing by case
+	 * or by leading zeros only. The keys are ordered as
+	 * {@link #compareNatural(String, String)} orders the names.
+	 */
+	private static String toNaturalKey(final String name) {
+		final int length = name.length();
+		final StringBuilder builder = new StringBuilder(length + 8);
+		int i = 0;
+		while (i < length) {
+			final char ch = name.charAt(i);
+			if (!isDigit(ch)) {
+				builder.append(Character.toLowerCase(ch));
+				i++;
+				continue;
+			}
+
+			final int start = skipZeros(name, i);
+			final int end = skipDigits(name, start);
+			// '0' marks a number, its length orders it before its digits
+			builder.append('0').append((char) (end - start));
+			builder.append(name, start, end);
+			i = end;
+		}
+		return builder.append('\0').append(name).toString();
+	}
+
+	/**
+	 * Compares the given names in natural order without allocating; the
+	 * result has the sign of the comparison of their natural keys.
+	 */
+	private static int compareNatural(final String name1, final String name2) {
+		final int length1 = name1.length();
+		final int length2 = name2.length();
+		int i = 0;
+		int j = 0;
+		while (i < length1 && j < length2) {
+			final char ch1 = name1.charAt(i);
+			final char ch2 = name2.charAt(j);
+			final boolean digit1 = isDigit(ch1);
+			final boolean digit2 = isDigit(ch2);
+			if (digit1 && digit2) {
+				// compare the lengths, then the digits
+				final int start1 = skipZeros(name1, i);
+				final int end1 = skipDigits(name1, start1);
+				final int start2 = skipZeros(name2, j);
+				final int end2 = skipDigits(name2, start2);
+				final int diff = (char) (end1 - start1) - (char) (end2 - start2);
+				if (diff != 0) {
+					return diff;
+				}
+				for (int k = 0; k < end1 - start1; k++) {
+					final int digitDiff = name1.charAt(start1 + k)
+							- name2.charAt(start2 + k);
+					if (digitDiff != 0) {
+						return digitDiff;
+					}
+				}
+				i = end1;
+				j = end2;
+				continue;
+			}
+			final int diff = toKeyChar(ch1, digit1) - toKeyChar(ch2, digit2);
+			if (diff != 0) {
+				return diff;
+			}
+			i++;
+			j++;
+		}
+
+		// the key of an exhausted name continues with '\0'
+		if (i < length1) {
+			final char ch1 = name1.charAt(i);
+			return toKeyChar(ch1, isDigit(ch1));
+		}
+		if (j < length2) {
+			final char ch2 = name2.charAt(j);
+			return -toKeyChar(ch2, isDigit(ch2));
+		}
+		return name1.compareTo(name2);
+	}
+
+	/**
+	 * Gets the first key character of the given name character.
+	 */
+	private static char toKeyChar(final char ch, final boolean digit) {
+		return digit ? '0' : Character.toLowerCase(ch);
+	}
+
+	/**
+	 * Skips the leading zeros of the digit run starting at the given index,
+	 * keeping its last digit.
+	 */
+	private static int skipZeros(final String name, final int index) {
+		final int last = name.length() - 1;
+		int i = index;
+		while (i < last && name.charAt(i) == '0' && isDigit(name.charAt(i + 1))) {
+			i++;
+		}
+		return i;
+	}
+
+	/**
+	 * Gets the end of the digit run starting at the given index.
+	 */
+	private static int skipDigits(final String name, final int index) {
+		final int length = name.length();
+		int i = index;
+		while (i < length && isDigit(name.charAt(i))) {
+			i++;
+		}
+		return i;
+	}
+
+	private static boolean isDigit(final char ch) {
+		return ch >= '0' && ch <= '9';
+	}
 }
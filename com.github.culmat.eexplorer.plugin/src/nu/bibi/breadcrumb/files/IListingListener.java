@@ -0,0 +1,30 @@
+/*******************************************************************************
+ * Copyright (c) 2008 Laurent Muller.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     Laurent Muller - initial API and implementation
+ *******************************************************************************/
+package nu.bibi.breadcrumb.files;
+
+/**
+ * A listener which is notified when a background listing of the
+ * {@link FileContentProvider} has been applied to its viewer.
+ * 
+ * @author Laurent Muller
+ * @version 1.0
+ */
+public interface IListingListener {
+
+	/**
+	 * Notifies that all the children of the given element are shown. This
+	 * method is called from the display thread.
+	 * 
+	 * @param parent
+	 *            the listed element.
+	 */
+	void listingDone(Object parent);
+}
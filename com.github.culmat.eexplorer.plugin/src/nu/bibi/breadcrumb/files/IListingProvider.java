@@ -0,0 +1,37 @@
+/*******************************************************************************
+ * Copyright (c) 2008 Laurent Muller.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     Laurent Muller - initial API and implementation
+ *******************************************************************************/
+package nu.bibi.breadcrumb.files;
+
+/**
+ * A content provider listing directories in the background and notifying
+ * {@link IListingListener}s when a listing has been applied to its viewer.
+ * 
+ * @author Laurent Muller
+ * @version 1.0
+ */
+public interface IListingProvider {
+
+	/**
+	 * Adds a listener notified when a background listing is complete.
+	 * 
+	 * @param listener
+	 *            the listener to add.
+	 */
+	void addListingListener(IListingListener listener);
+
+	/**
+	 * Removes the given listing listener.
+	 * 
+	 * @param listener
+	 *            the listener to remove.
+	 */
+	void removeListingListener(IListingListener listener);
+}
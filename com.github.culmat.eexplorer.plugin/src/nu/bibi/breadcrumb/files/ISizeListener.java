@@ -0,0 +1,32 @@
+/*******************************************************************************
+ * Copyright (c) 2008 Laurent Muller.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     Laurent Muller - initial API and implementation
+ *******************************************************************************/
+package nu.bibi.breadcrumb.files;
+
+import java.io.File;
+
+/**
+ * A listener which is notified when the {@link DirectorySizes} know new
+ * totals.
+ * 
+ * @author Laurent Muller
+ * @version 1.0
+ */
+public interface ISizeListener {
+
+	/**
+	 * Notifies that the totals of the given directories have been computed or
+	 * updated. This method is called from a background thread.
+	 * 
+	 * @param directories
+	 *            the directories.
+	 */
+	void sizesChanged(File[] directories);
+}
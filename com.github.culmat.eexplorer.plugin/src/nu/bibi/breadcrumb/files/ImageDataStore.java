@@ -0,0 +1,464 @@
+/*******************************************************************************
+ * Copyright (c) 2008 Laurent Muller.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     Laurent Muller - initial API and implementation
+ *******************************************************************************/
+package nu.bibi.breadcrumb.files;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import org.eclipse.swt.graphics.ImageData;
+import org.eclipse.swt.graphics.PaletteData;
+import org.eclipse.swt.graphics.RGB;
+
+/**
+ * A persistent store of program images by file extension, used by the
+ * {@link ImageFileRegistry} to avoid querying the operating system again
+ * after a restart.
+ * <p>
+ * The images are saved as raw {@link ImageData} fields in a single file,
+ * stamped with the modification time of the file association databases of
+ * the operating system. The file is memory mapped and read at once; it is
+ * ignored if the stamp has changed, if it is malformed or if its entries are
+ * older than {@link #MAX_AGE}.
+ * </p>
+ * <p>
+ * A mapped file cannot be replaced on all platforms until the mapping is
+ * garbage collected, so two files are used in turn: the newest valid one is
+ * loaded and the other one is written.
+ * </p>
+ * 
+ * @author Laurent Muller
+ * @version 1.0
+ */
+public class ImageDataStore {
+
+	/**
+	 * The maximum age, in milliseconds, of a stored image.
+	 */
+	public final static long MAX_AGE = 30L * 24 * 60 * 60 * 1000;
+
+	/*
+	 * the file header
+	 */
+	private static final int MAGIC = 0x49434F4E;
+	private static final int VERSION = 1;
+
+	/*
+	 * the default instance
+	 */
+	private static ImageDataStore instance;
+
+	/**
+	 * Gets the store used by the image file registries.
+	 * 
+	 * @return the default store or <code>null</code> if none.
+	 */
+	public static synchronized ImageDataStore getDefault() {
+		return instance;
+	}
+
+	/**
+	 * Sets the store used by the image file registries.
+	 * 
+	 * @param store
+	 *            the store or <code>null</code> to disable persistence.
+	 */
+	public static synchronized void setDefault(final ImageDataStore store) {
+		instance = store;
+	}
+
+	/**
+	 * Computes the stamp of the file association databases: the last
+	 * modification time of the association files and directories of the
+	 * current operating system.
+	 * 
+	 * @return the stamp, 0 if no association file is known.
+	 */
+	public static long computeAssociationStamp() {
+		final String os = System.getProperty("os.name", "") //$NON-NLS-1$ //$NON-NLS-2$
+				.toLowerCase(Locale.ROOT);
+		final String home = System.getProperty("user.home", ""); //$NON-NLS-1$ //$NON-NLS-2$
+		final String[] paths;
+		if (os.startsWith("windows")) { //$NON-NLS-1$
+			final String local = System.getenv("LOCALAPPDATA"); //$NON-NLS-1$
+			if (local == null) {
+				return 0;
+			}
+			paths = new String[] { local + "\\IconCache.db", //$NON-NLS-1$
+					local + "\\Microsoft\\Windows\\Explorer" }; //$NON-NLS-1$
+		} else if (os.startsWith("mac")) { //$NON-NLS-1$
+			paths = new String[] { home
+					+ "/Library/Preferences/com.apple.LaunchServices/com.apple.launchservices.secure.plist" }; //$NON-NLS-1$
+		} else {
+			paths = new String[] { "/usr/share/applications", //$NON-NLS-1$
+					"/usr/local/share/applications", //$NON-NLS-1$
+					"/usr/share/mime/packages", //$NON-NLS-1$
+					home + "/.local/share/applications", //$NON-NLS-1$
+					home + "/.config/mimeapps.list" }; //$NON-NLS-1$
+		}
+
+		long stamp = 0;
+		for (final String path : paths) {
+			stamp = Math.max(stamp, new File(path).lastModified());
+		}
+		return stamp;
+	}
+
+	/*
+	 * the store files, used in turn
+	 */
+	private final File[] files;
+
+	/*
+	 * the index of the loaded file, -1 if none
+	 */
+	private int loadedIndex = -1;
+
+	/*
+	 * the association stamp
+	 */
+	private final long stamp;
+
+	/*
+	 * the images and their creation time
+	 */
+	private final Map<String, ImageData> images = new HashMap<String, ImageData>();
+	private final Map<String, Long> times = new HashMap<String, Long>();
+
+	/*
+	 * the state flags
+	 */
+	private boolean loaded;
+	private boolean dirty;
+
+	/**
+	 * Create a new store with the current association stamp.
+	 * 
+	 * @param file
+	 *            the file to load from and save to.
+	 */
+	public ImageDataStore(final File file) {
+		this(file, computeAssociationStamp());
+	}
+
+	/**
+	 * Create a new store.
+	 * 
+	 * @param file
+	 *            the file to load from and save to.
+	 * @param stamp
+	 *            the association stamp, the file is ignored if saved with
+	 *            another stamp.
+	 */
+	public ImageDataStore(final File file, final long stamp) {
+		this.files = new File[] { file,
+				new File(file.getPath() + ".alt") }; //$NON-NLS-1$
+		this.stamp = stamp;
+	}
+
+	/**
+	 * Gets the image of the given extension, loading the store if needed.
+	 * 
+	 * @param extension
+	 *            the file extension.
+	 * @return the image data or <code>null</code> if not stored.
+	 */
+	public synchronized ImageData get(final String extension) {
+		load();
+		return images.get(extension);
+	}
+
+	/**
+	 * Gets the image of the given extension if the store is already loaded.
+	 * This method never accesses the disk.
+	 * 
+	 * @param extension
+	 *            the file extension.
+	 * @return the image data or <code>null</code> if not stored or not
+	 *         loaded.
+	 */
+	public synchronized ImageData getIfLoaded(final String extension) {
+		return loaded ? images.get(extension) : null;
+	}
+
+	/**
+	 * Returns whether the store is loaded.
+	 * 
+	 * @return <code>true</code> if loaded.
+	 */
+	public synchronized boolean isLoaded() {
+		return loaded;
+	}
+
+	/**
+	 * Loads the newest store file, if not yet done. Missing, outdated or
+	 * malformed files leave the store empty.
+	 */
+	public synchronized void load() {
+		if (loaded) {
+			return;
+		}
+		loaded = true;
+		final int newest = files[1].lastModified() > files[0].lastModified() ? 1
+				: 0;
+		if (!load(newest)) {
+			load(1 - newest);
+		}
+	}
+
+	/**
+	 * Stores the image of the given extension.
+	 * 
+	 * @param extension
+	 *            the file extension.
+	 * @param data
+	 *            the image data.
+	 */
+	public synchronized void put(final String extension, final ImageData data) {
+		load();
+		images.put(extension, data);
+		times.put(extension, Long.valueOf(System.currentTimeMillis()));
+		dirty = true;
+	}
+
+	/**
+	 * Saves the store file if images have been added since loaded.
+	 * 
+	 * @throws IOException
+	 *             if the file cannot be written.
+	 */
+	public synchronized void save() throws IOException {
+		if (!dirty) {
+			return;
+		}
+		// write the file not mapped
+		final File target = files[loadedIndex == 0 ? 1 : 0];
+		final File parent = target.getParentFile();
+		if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+			throw new IOException("Cannot create " + parent); //$NON-NLS-1$
+		}
+		final File temp = new File(target.getPath() + ".tmp"); //$NON-NLS-1$
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(temp)))) {
+			write(out);
+		}
+		if (target.exists() && !target.delete() || !temp.renameTo(target)) {
+			temp.delete();
+			throw new IOException("Cannot replace " + target); //$NON-NLS-1$
+		}
+		dirty = false;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public synchronized String toString() {
+		return "ImageDataStore[file=" + files[0] + ", size=" + images.size() + "]"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+	}
+
+	/**
+	 * Maps and reads the store file at the given index.
+	 * 
+	 * @return <code>true</code> if the file is valid.
+	 */
+	private boolean load(final int index) {
+		final File file = files[index];
+		if (!file.isFile()) {
+			return false;
+		}
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r"); //$NON-NLS-1$
+				FileChannel channel = raf.getChannel()) {
+			final MappedByteBuffer buffer = channel.map(
+					FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			loadedIndex = index;
+			if (read(buffer)) {
+				return true;
+			}
+		} catch (final IOException e) {
+			// malformed
+		} catch (final RuntimeException e) {
+			// truncated or corrupted, e.g. buffer underflow or invalid image
+		}
+		images.clear();
+		times.clear();
+		return false;
+	}
+
+	/**
+	 * Reads the images from the given buffer.
+	 * 
+	 * @return <code>false</code> if the buffer is not a store of the current
+	 *         stamp.
+	 */
+	private boolean read(final ByteBuffer buffer) {
+		if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION
+				|| buffer.getLong() != stamp) {
+			return false;
+		}
+		final long oldest = System.currentTimeMillis() - MAX_AGE;
+		final int count = readLength(buffer, 1);
+		for (int i = 0; i < count; i++) {
+			final String extension = readString(buffer);
+			final long time = buffer.getLong();
+			final ImageData data = readImageData(buffer);
+			if (time >= oldest) {
+				images.put(extension, data);
+				times.put(extension, Long.valueOf(time));
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Writes the images to the given stream.
+	 */
+	private void write(final DataOutputStream out) throws IOException {
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeLong(stamp);
+		out.writeInt(images.size());
+		for (final Map.Entry<String, ImageData> entry : images.entrySet()) {
+			final String extension = entry.getKey();
+			out.writeInt(extension.length());
+			out.writeChars(extension);
+			out.writeLong(times.get(extension).longValue());
+			writeImageData(out, entry.getValue());
+		}
+	}
+
+	/**
+	 * Reads a length and checks that the buffer holds as many elements of
+	 * the given size.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if the length is negative or exceeds the buffer.
+	 */
+	private static int readLength(final ByteBuffer buffer, final int size) {
+		final int length = buffer.getInt();
+		if (length < 0 || length > buffer.remaining() / size) {
+			throw new IllegalArgumentException("Invalid length: " + length); //$NON-NLS-1$
+		}
+		return length;
+	}
+
+	private static String readString(final ByteBuffer buffer) {
+		final int length = readLength(buffer, 2);
+		final char[] chars = new char[length];
+		for (int i = 0; i < length; i++) {
+			chars[i] = buffer.getChar();
+		}
+		return new String(chars);
+	}
+
+	private static byte[] readBytes(final ByteBuffer buffer) {
+		final int length = buffer.getInt();
+		if (length == -1) {
+			return null;
+		}
+		if (length < 0 || length > buffer.remaining()) {
+			throw new IllegalArgumentException("Invalid length: " + length); //$NON-NLS-1$
+		}
+		final byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return bytes;
+	}
+
+	private static void writeBytes(final DataOutputStream out,
+			final byte[] bytes) throws IOException {
+		if (bytes == null) {
+			out.writeInt(-1);
+		} else {
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+	}
+
+	/**
+	 * Reads an image data written by
+	 * {@link #writeImageData(DataOutputStream, ImageData)}.
+	 */
+	private static ImageData readImageData(final ByteBuffer buffer) {
+		final int width = buffer.getInt();
+		final int height = buffer.getInt();
+		final int depth = buffer.getInt();
+		final int scanlinePad = buffer.getInt();
+
+		// palette
+		final PaletteData palette;
+		if (buffer.get() != 0) {
+			palette = new PaletteData(buffer.getInt(), buffer.getInt(), buffer
+					.getInt());
+		} else {
+			final RGB[] colors = new RGB[readLength(buffer, 3)];
+			for (int i = 0; i < colors.length; i++) {
+				colors[i] = new RGB(buffer.get() & 0xFF, buffer.get() & 0xFF,
+						buffer.get() & 0xFF);
+			}
+			palette = new PaletteData(colors);
+		}
+
+		final ImageData data = new ImageData(width, height, depth, palette,
+				scanlinePad, readBytes(buffer));
+		data.transparentPixel = buffer.getInt();
+		data.alpha = buffer.getInt();
+		data.maskPad = buffer.getInt();
+		data.maskData = readBytes(buffer);
+		data.alphaData = readBytes(buffer);
+		return data;
+	}
+
+	/**
+	 * Writes the fields of the given image data.
+	 */
+	private static void writeImageData(final DataOutputStream out,
+			final ImageData data) throws IOException {
+		out.writeInt(data.width);
+		out.writeInt(data.height);
+		out.writeInt(data.depth);
+		out.writeInt(data.scanlinePad);
+
+		// palette
+		final PaletteData palette = data.palette;
+		out.writeBoolean(palette.isDirect);
+		if (palette.isDirect) {
+			out.writeInt(palette.redMask);
+			out.writeInt(palette.greenMask);
+			out.writeInt(palette.blueMask);
+		} else {
+			final RGB[] colors = palette.getRGBs();
+			out.writeInt(colors.length);
+			for (final RGB color : colors) {
+				out.writeByte(color.red);
+				out.writeByte(color.green);
+				out.writeByte(color.blue);
+			}
+		}
+
+		writeBytes(out, data.data);
+		out.writeInt(data.transparentPixel);
+		out.writeInt(data.alpha);
+		out.writeInt(data.maskPad);
+		writeBytes(out, data.maskData);
+		writeBytes(out, data.alphaData);
+	}
+}
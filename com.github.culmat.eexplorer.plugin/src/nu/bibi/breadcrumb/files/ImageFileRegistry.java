@@ -12,11 +12,25 @@ package nu.bibi.breadcrumb.files;
 
 import java.io.File;
 import java.io.InputStream;
-
-import org.eclipse.core.runtime.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.jface.resource.ImageDescriptor;
 import org.eclipse.jface.resource.ImageRegistry;
 import org.eclipse.jface.resource.ResourceManager;
+import org.eclipse.swt.SWT;
 import org.eclipse.swt.graphics.Image;
 import org.eclipse.swt.graphics.ImageData;
 import org.eclipse.swt.program.Program;
@@ -25,12 +39,91 @@ import org.eclipse.swt.widgets.Display;
 /**
  * An image file registry maintains a mapping between a file extension and SWT
  * image descriptor objects.
+ * <p>
+ * The program images of the extensions are resolved asynchronously: until
+ * then, {@link #get(File)} returns the generic file image. The stored images
+ * are read in the background; the operating system is queried in the display
+ * thread, a few extensions per runnable, since the program lookups are not
+ * thread safe on all platforms (GTK). The resolved images are added in
+ * batches, one display runnable for all the images resolved in the meantime,
+ * and the {@link IImageListener}s are notified.
+ * </p>
+ * <p>
+ * Images are cached by extension and hidden flag; the hidden variant is
+ * derived from the program image with half transparency. Extensions without
+ * program image are remembered too, in a least recently used cache whose
+ * entries expire so that newly installed programs are eventually seen.
+ * Program images are kept for the life of the registry since items may
+ * still display them. The counters report the cost of the program lookups.
+ * </p>
+ * <p>
+ * If an {@link ImageDataStore} is set as default, the program images are
+ * taken from it before querying the operating system and added to it once
+ * resolved, so that they survive restarts.
+ * </p>
  * 
  * @author Laurent Muller
  * @version 1.0
  */
 public class ImageFileRegistry extends ImageRegistry {
 
+	/**
+	 * A listener notified when program images have been added.
+	 */
+	public interface IImageListener {
+
+		/**
+		 * Notifies that the images of the given extensions have been
+		 * resolved. This method is called from the display thread.
+		 * 
+		 * @param extensions
+		 *            the resolved extensions, with or without image.
+		 */
+		void imagesResolved(String[] extensions);
+	}
+
+	/*
+	 * The job reading the stored images of the queued extensions, one at a
+	 * time
+	 */
+	private class ResolveJob extends Job {
+
+		ResolveJob() {
+			super("Resolve file images"); //$NON-NLS-1$
+			setSystem(true);
+			setPriority(DECORATE);
+		}
+
+		@Override
+		protected IStatus run(final IProgressMonitor monitor) {
+			for (;;) {
+				final String extension;
+				synchronized (queue) {
+					if (queue.isEmpty() || monitor.isCanceled()) {
+						return Status.OK_STATUS;
+					}
+					extension = queue.iterator().next();
+					queue.remove(extension);
+				}
+				// stored ? otherwise query the program in the display thread
+				final ImageDataStore store = ImageDataStore.getDefault();
+				final ImageData data = store == null ? null : store
+						.get(extension);
+				synchronized (queue) {
+					if (data == null) {
+						unresolved.add(extension);
+					} else {
+						resolved.put(extension, data);
+					}
+					if (!flushScheduled) {
+						flushScheduled = true;
+						asyncFlush();
+					}
+				}
+			}
+		}
+	}
+
 	/**
 	 * The key name for a computer.
 	 */
@@ -81,6 +174,27 @@ public class ImageFileRegistry extends ImageRegistry {
 	 */
 	public final static String KEY_ARROW_DOWN = "arrow_down.png"; //$NON-NLS-1
 
+	/**
+	 * The maximum number of remembered extensions without program image.
+	 */
+	public final static int MISSING_CAPACITY = 512;
+
+	/**
+	 * The time to live, in milliseconds, of an extension without program
+	 * image.
+	 */
+	public final static long MISSING_TTL = 10 * 60 * 1000;
+
+	/*
+	 * the maximum number of program lookups per display runnable
+	 */
+	private static final int MAX_LOOKUPS = 8;
+
+	/*
+	 * the suffix of the hidden variant keys
+	 */
+	private static final String HIDDEN_SUFFIX = "#hidden"; //$NON-NLS-1$
+
 	/*
 	 * The icons path
 	 */
@@ -112,6 +226,89 @@ public class ImageFileRegistry extends ImageRegistry {
 		return descriptor;
 	}
 
+	/**
+	 * Gets the extension of the given file.
+	 * 
+	 * @param file
+	 *            the file.
+	 * @return the text after the last dot of the file name or
+	 *         <code>null</code> if the name has no dot.
+	 */
+	public static String getExtension(final File file) {
+		final String name = file.getName();
+		final int index = name.lastIndexOf('.');
+		if (index == -1) {
+			return null;
+		}
+		return name.substring(index + 1);
+	}
+
+	/*
+	 * the display thread
+	 */
+	private final Display display;
+
+	/*
+	 * the extensions being resolved (display thread only)
+	 */
+	private final Set<String> pending = new HashSet<String>();
+
+	/*
+	 * the extensions without program image and their expiration time, in
+	 * access order (display thread only)
+	 */
+	private final LinkedHashMap<String, Long> missing = new LinkedHashMap<String, Long>(
+			16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(final Map.Entry<String, Long> eldest) {
+			if (size() > MISSING_CAPACITY) {
+				evictions++;
+				return true;
+			}
+			return false;
+		}
+	};
+
+	/*
+	 * the cache counters (display thread only)
+	 */
+	private long hits;
+	private long negativeHits;
+	private long evictions;
+
+	/*
+	 * the program lookup counters, guarded by the queue
+	 */
+	private long lookups;
+	private long lookupNanos;
+	private long maxLookupNanos;
+
+	/*
+	 * the extensions to resolve, the extensions to look up in the display
+	 * thread and the resolved image data, guarded by the queue
+	 */
+	private final Set<String> queue = new LinkedHashSet<String>();
+	private final Set<String> unresolved = new LinkedHashSet<String>();
+	private final Map<String, ImageData> resolved = new HashMap<String, ImageData>();
+	private boolean flushScheduled;
+
+	/*
+	 * the job resolving the queued extensions
+	 */
+	private final Job resolveJob = new ResolveJob();
+
+	/*
+	 * the listeners
+	 */
+	private final List<IImageListener> listeners = new CopyOnWriteArrayList<IImageListener>();
+
+	/*
+	 * the disposed flag
+	 */
+	private volatile boolean disposed;
+
 	/**
 	 * Creates an empty image file registry.
 	 * <p>
@@ -121,6 +318,7 @@ public class ImageFileRegistry extends ImageRegistry {
 	 */
 	public ImageFileRegistry() {
 		super();
+		display = Display.getCurrent();
 		initializeImages();
 	}
 
@@ -133,6 +331,7 @@ public class ImageFileRegistry extends ImageRegistry {
 	 */
 	public ImageFileRegistry(final Display display) {
 		super(display);
+		this.display = display;
 		initializeImages();
 	}
 
@@ -145,11 +344,36 @@ public class ImageFileRegistry extends ImageRegistry {
 	 */
 	public ImageFileRegistry(final ResourceManager manager) {
 		super(manager);
+		display = Display.getCurrent();
 		initializeImages();
 	}
 
 	/**
-	 * Returns a image for the given file.
+	 * Adds the given image listener.
+	 * 
+	 * @param listener
+	 *            the listener to add.
+	 */
+	public void addImageListener(final IImageListener listener) {
+		listeners.add(listener);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.eclipse.jface.resource.ImageRegistry#dispose()
+	 */
+	@Override
+	public void dispose() {
+		disposed = true;
+		resolveJob.cancel();
+		listeners.clear();
+		super.dispose();
+	}
+
+	/**
+	 * Returns a image for the given file. For a {@link FileEntry}, the hidden
+	 * and directory flags are taken from its attributes.
 	 * 
 	 * @param file
 	 *            a file used to retrieve image.
@@ -164,8 +388,8 @@ public class ImageFileRegistry extends ImageRegistry {
 		// the hidden flag
 		final boolean hidden = file.isHidden();
 
-		// drive
-		if (file.getParentFile() == null) {
+		// drive (getParentFile() would allocate a new file)
+		if (file.getParent() == null) {
 			return hidden ? get(KEY_DRIVE_HIDDEN) : get(KEY_DRIVE_DEFAULT);
 		}
 
@@ -175,34 +399,309 @@ public class ImageFileRegistry extends ImageRegistry {
 		}
 
 		// get extension
-		final Path path = new Path(file.getAbsolutePath());
-		final String extension = path.getFileExtension();
+		final String extension = getExtension(file);
 
 		// image already saved ?
-		final Image image = get(extension);
+		if (extension != null) {
+			final Image image = getProgramImage(extension, hidden);
+			if (image != null) {
+				hits++;
+				return image;
+			}
+
+			// stored and already loaded ?
+			final ImageDataStore store = ImageDataStore.getDefault();
+			final ImageData data = store == null ? null : store
+					.getIfLoaded(extension);
+			if (data != null && getDescriptor(extension) == null) {
+				put(extension, ImageDescriptor.createFromImageData(data));
+				hits++;
+				return getProgramImage(extension, hidden);
+			}
+
+			// known without image ?
+			if (isMissing(extension)) {
+				negativeHits++;
+			} else if (pending.add(extension)) {
+				// resolve program image
+				synchronized (queue) {
+					queue.add(extension);
+				}
+				resolveJob.schedule();
+			}
+		}
+
+		// default image
+		return hidden ? get(KEY_FILE_HIDDEN) : get(KEY_FILE_DEFAULT);
+	}
+
+	/**
+	 * Gets the number of removed extensions without program image.
+	 * 
+	 * @return the number of entries removed to respect the capacity or
+	 *         because they expired.
+	 */
+	public long getEvictionCount() {
+		return evictions;
+	}
+
+	/**
+	 * Gets the number of files whose program image was cached.
+	 * 
+	 * @return the hit count.
+	 */
+	public long getHitCount() {
+		return hits;
+	}
+
+	/**
+	 * Gets the number of program lookups.
+	 * 
+	 * @return the number of queries to the operating system.
+	 */
+	public long getLookupCount() {
+		synchronized (queue) {
+			return lookups;
+		}
+	}
+
+	/**
+	 * Gets the total time spent in program lookups.
+	 * 
+	 * @return the time in milliseconds.
+	 */
+	public long getLookupTime() {
+		synchronized (queue) {
+			return lookupNanos / 1000000;
+		}
+	}
+
+	/**
+	 * Gets the time of the slowest program lookup.
+	 * 
+	 * @return the time in milliseconds.
+	 */
+	public long getMaxLookupTime() {
+		synchronized (queue) {
+			return maxLookupNanos / 1000000;
+		}
+	}
+
+	/**
+	 * Gets the number of files whose extension is known to have no program
+	 * image.
+	 * 
+	 * @return the negative hit count.
+	 */
+	public long getNegativeHitCount() {
+		return negativeHits;
+	}
+
+	/**
+	 * Returns whether the program image of the given file is being resolved.
+	 * The image returned by {@link #get(File)} is then a default image.
+	 * 
+	 * @param file
+	 *            the file.
+	 * @return <code>true</code> if a better image will be available.
+	 */
+	public boolean isPending(final File file) {
+		final String extension = getExtension(file);
+		return extension != null && pending.contains(extension);
+	}
+
+	/**
+	 * Removes the given image listener.
+	 * 
+	 * @param listener
+	 *            the listener to remove.
+	 */
+	public void removeImageListener(final IImageListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Posts the flush of the resolved images to the display thread.
+	 */
+	private void asyncFlush() {
+		if (display == null || display.isDisposed()) {
+			return;
+		}
+		display.asyncExec(new Runnable() {
+			@Override
+			public void run() {
+				flush();
+			}
+		});
+	}
+
+	/**
+	 * Gets the program image data of the given extension. This method must be
+	 * called from the display thread.
+	 * 
+	 * @param extension
+	 *            the file extension.
+	 * @return the image data or <code>null</code> if none.
+	 */
+	private ImageData findImageData(final String extension) {
+		final Program program = Program.findProgram(extension);
+		if (program == null) {
+			return null;
+		}
+		return program.getImageData();
+	}
+
+	/**
+	 * Looks up the next program images, adds all the resolved images and
+	 * notifies the listeners. The remaining lookups are posted again so that
+	 * the display thread stays responsive.
+	 */
+	private void flush() {
+		final Map<String, ImageData> batch;
+		final List<String> lookup = new ArrayList<String>(MAX_LOOKUPS);
+		final boolean more;
+		synchronized (queue) {
+			batch = new HashMap<String, ImageData>(resolved);
+			resolved.clear();
+			final Iterator<String> iterator = unresolved.iterator();
+			while (iterator.hasNext() && lookup.size() < MAX_LOOKUPS) {
+				lookup.add(iterator.next());
+				iterator.remove();
+			}
+			more = !unresolved.isEmpty();
+			flushScheduled = more;
+		}
+		if (disposed) {
+			return;
+		}
+		if (more) {
+			asyncFlush();
+		}
+
+		final ImageDataStore store = ImageDataStore.getDefault();
+		for (final String extension : lookup) {
+			final long start = System.nanoTime();
+			final ImageData data = findImageData(extension);
+			final long elapsed = System.nanoTime() - start;
+			if (data != null && store != null) {
+				store.put(extension, data);
+			}
+			synchronized (queue) {
+				lookups++;
+				lookupNanos += elapsed;
+				maxLookupNanos = Math.max(maxLookupNanos, elapsed);
+			}
+			batch.put(extension, data);
+		}
+		if (batch.isEmpty()) {
+			return;
+		}
+
+		final List<String> extensions = new ArrayList<String>(batch.size());
+		for (final Map.Entry<String, ImageData> entry : batch.entrySet()) {
+			final String extension = entry.getKey();
+			final ImageData data = entry.getValue();
+			pending.remove(extension);
+			if (data == null) {
+				missing.put(extension, Long.valueOf(System.currentTimeMillis()
+						+ MISSING_TTL));
+			} else if (getDescriptor(extension) == null) {
+				put(extension, ImageDescriptor.createFromImageData(data));
+			}
+			extensions.add(extension);
+		}
+
+		final String[] array = extensions.toArray(new String[extensions
+				.size()]);
+		for (final IImageListener listener : listeners) {
+			listener.imagesResolved(array);
+		}
+	}
+
+	/**
+	 * Gets the cached program image of the given extension, deriving the
+	 * hidden variant from the program image if needed.
+	 * 
+	 * @return the image or <code>null</code> if not resolved.
+	 */
+	private Image getProgramImage(final String extension, final boolean hidden) {
+		if (!hidden) {
+			return get(extension);
+		}
+		final String key = extension + HIDDEN_SUFFIX;
+		final Image image = get(key);
 		if (image != null) {
 			return image;
 		}
+		final ImageDescriptor descriptor = getDescriptor(extension);
+		if (descriptor == null) {
+			return null;
+		}
+		final ImageData data = descriptor.getImageData();
+		if (data == null) {
+			return null;
+		}
+		put(key, ImageDescriptor.createFromImageData(createHiddenData(data)));
+		return get(key);
+	}
 
-		// get program image
-		if (extension != null) {
-			final Program program = Program.findProgram(extension);
-			// program ?
-			if (program != null) {
-				// get image data
-				final ImageData imageData = program.getImageData();
-				if (imageData != null) {
-					// add
-					final ImageDescriptor descriptor = ImageDescriptor
-							.createFromImageData(imageData);
-					this.put(extension, descriptor);
-					return get(extension);
+	/**
+	 * Returns whether the given extension is known to have no program
+	 * image. Expired entries are removed.
+	 */
+	private boolean isMissing(final String extension) {
+		final Long expires = missing.get(extension);
+		if (expires == null) {
+			return false;
+		}
+		if (expires.longValue() < System.currentTimeMillis()) {
+			missing.remove(extension);
+			evictions++;
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Creates the half transparent variant of the given image data.
+	 */
+	private static ImageData createHiddenData(final ImageData source) {
+		final ImageData data = (ImageData) source.clone();
+		if (data.alphaData != null) {
+			for (int i = 0; i < data.alphaData.length; i++) {
+				data.alphaData[i] = (byte) ((data.alphaData[i] & 0xFF) / 2);
+			}
+		} else if (data.getTransparencyType() == SWT.TRANSPARENCY_MASK
+				|| data.getTransparencyType() == SWT.TRANSPARENCY_PIXEL) {
+			// keep the mask, the global alpha is not combined with it
+			data.alphaData = new byte[data.width * data.height];
+			final ImageData mask = data.getTransparencyMask();
+			for (int y = 0; y < data.height; y++) {
+				for (int x = 0; x < data.width; x++) {
+					if (mask.getPixel(x, y) != 0) {
+						data.alphaData[y * data.width + x] = (byte) 0x80;
+					}
 				}
 			}
+			data.maskData = null;
+			data.transparentPixel = -1;
+		} else {
+			data.alpha = 0x80;
 		}
+		return data;
+	}
 
-		// default image
-		return hidden ? get(KEY_FILE_HIDDEN) : get(KEY_FILE_DEFAULT);
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "ImageFileRegistry[hits=" + hits + ", negativeHits=" //$NON-NLS-1$ //$NON-NLS-2$
+				+ negativeHits + ", evictions=" + evictions + ", lookups=" //$NON-NLS-1$ //$NON-NLS-2$
+				+ getLookupCount() + ", lookupTime=" + getLookupTime() //$NON-NLS-1$
+				+ "ms, maxLookupTime=" + getMaxLookupTime() + "ms]"; //$NON-NLS-1$ //$NON-NLS-2$
 	}
 
 	/**
@@ -0,0 +1,678 @@
+/*******************************************************************************
+ * Copyright (c) 2008 Laurent Muller.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     Laurent Muller - initial API and implementation
+ *******************************************************************************/
+package nu.bibi.breadcrumb.files;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.jface.viewers.ILazyTreeContentProvider;
+import org.eclipse.jface.viewers.TreeViewer;
+import org.eclipse.jface.viewers.Viewer;
+import org.eclipse.jface.viewers.ViewerComparator;
+import org.eclipse.jface.viewers.ViewerFilter;
+import org.eclipse.swt.widgets.Control;
+
+/**
+ * Lazy file content provider for virtual tree viewers (<code>SWT.VIRTUAL</code>
+ * ).
+ * <p>
+ * Only the items scrolled into view are materialized. Directories are listed
+ * by a {@link DirectoryListingJob}, which also filters the children. They
+ * are shown in the order they are read, followed by a {@link LoadingElement},
+ * until the listing is complete and sorted. Whether a directory can be
+ * expanded is answered by a {@link DirectoryProbe} in a background job; until
+ * then the directory shows an expander. Because lazy viewers neither filter
+ * nor sort, the filters and the comparator are given to this provider instead
+ * of the viewer. The comparator is called from the job thread.
+ * </p>
+ * <p>
+ * The children of the input can be narrowed with {@link #setFilter(String)}.
+ * The names of each listing are kept in memory and matched by a job; only
+ * the matching children are then given to the viewer.
+ * </p>
+ * 
+ * @author Laurent Muller
+ * @version 1.0
+ */
+public class LazyFileContentProvider implements ILazyTreeContentProvider,
+		IListingProvider {
+
+	/*
+	 * the viewer
+	 */
+	private TreeViewer viewer;
+
+	/*
+	 * the filters and the comparator
+	 */
+	private final ViewerFilter[] filters;
+	private final ViewerComparator comparator;
+
+	/*
+	 * the running listings and their placeholder (display thread only)
+	 */
+	private final Map<File, DirectoryListingJob> jobs = new HashMap<File, DirectoryListingJob>();
+	private final Map<File, LoadingElement> placeholders = new HashMap<File, LoadingElement>();
+
+	/*
+	 * the children received so far by the running listings, in the order
+	 * they are read (display thread only)
+	 */
+	private final Map<File, List<File>> partials = new HashMap<File, List<File>>();
+
+	/*
+	 * the directory probe used for the children not listed
+	 */
+	private final DirectoryProbe probe = new DirectoryProbe();
+
+	/*
+	 * the directories waiting for the probe job and the job, created on
+	 * first use
+	 */
+	private final LinkedHashSet<File> probes = new LinkedHashSet<File>();
+	private Job probeJob;
+
+	/*
+	 * the filtered and sorted children (display thread only)
+	 */
+	private final Map<Object, Object[]> listings = new HashMap<Object, Object[]>();
+
+	/*
+	 * the names of the listed children, in the same order (display thread
+	 * only)
+	 */
+	private final Map<Object, String[]> names = new HashMap<Object, String[]>();
+
+	/*
+	 * the name filter, the matching children of the input or null if not
+	 * filtered and the running filter job (display thread only)
+	 */
+	private NameMatcher matcher = new NameMatcher(""); //$NON-NLS-1$
+	private Object[] matches;
+	private Job filterJob;
+
+	/*
+	 * the listing listeners
+	 */
+	private final List<IListingListener> listeners = new ArrayList<IListingListener>();
+
+	/**
+	 * Create a new content provider.
+	 * 
+	 * @param filters
+	 *            the filters to apply, may be <code>null</code>.
+	 * @param comparator
+	 *            the comparator used to sort the children, may be
+	 *            <code>null</code>.
+	 */
+	public LazyFileContentProvider(final ViewerFilter[] filters,
+			final ViewerComparator comparator) {
+		this.filters = filters;
+		this.comparator = comparator;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see nu.bibi.breadcrumb.files.IListingProvider#addListingListener(nu.bibi.breadcrumb.files.IListingListener)
+	 */
+	@Override
+	public void addListingListener(final IListingListener listener) {
+		listeners.add(listener);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.eclipse.jface.viewers.IContentProvider#dispose()
+	 */
+	@Override
+	public void dispose() {
+		cancel();
+		cancelFilter();
+		cancelProbes();
+		listeners.clear();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.eclipse.jface.viewers.ILazyTreeContentProvider#getParent(java.lang.Object)
+	 */
+	@Override
+	public Object getParent(final Object element) {
+		if (element instanceof LoadingElement) {
+			return ((LoadingElement) element).getParent();
+		}
+		if (element instanceof File) {
+			final File file = (File) element;
+			if (FileUtils.isDriveFile(file)) {
+				return Computer.getInstance();
+			}
+			return file.getParentFile();
+		}
+		return null;
+	}
+
+	/**
+	 * Gets the index of the given child in the listing of the given parent.
+	 * 
+	 * @param parent
+	 *            the parent element.
+	 * @param element
+	 *            the child element.
+	 * @return the index of the child or -1 if the parent is not listed or does
+	 *         not contain the child.
+	 */
+	public int indexOf(final Object parent, final Object element) {
+		final Object[] children = getView(parent);
+		if (children != null) {
+			for (int i = 0; i < children.length; i++) {
+				if (children[i].equals(element)) {
+					return i;
+				}
+			}
+		}
+		return -1;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.eclipse.jface.viewers.IContentProvider#inputChanged(org.eclipse.jface.viewers.Viewer, java.lang.Object, java.lang.Object)
+	 */
+	@Override
+	public void inputChanged(final Viewer viewer, final Object oldInput,
+			final Object newInput) {
+		cancel();
+		cancelFilter();
+		cancelProbes();
+		listings.clear();
+		names.clear();
+		probe.clear();
+		matches = null;
+		if (viewer instanceof TreeViewer) {
+			this.viewer = (TreeViewer) viewer;
+		} else {
+			this.viewer = null;
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see nu.bibi.breadcrumb.files.IListingProvider#removeListingListener(nu.bibi.breadcrumb.files.IListingListener)
+	 */
+	@Override
+	public void removeListingListener(final IListingListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Gets the current filter pattern.
+	 * 
+	 * @return the pattern, empty if not filtered.
+	 */
+	public String getFilter() {
+		return matcher.getPattern();
+	}
+
+	/**
+	 * Narrows the children of the input to the names matching the given
+	 * pattern. The names are matched in the background; the viewer is
+	 * refreshed and the listing listeners are notified once done. If the
+	 * input is still being listed, the filter is applied when the listing is
+	 * complete.
+	 * 
+	 * @param pattern
+	 *            the pattern, an empty pattern shows all the children.
+	 * @see NameMatcher
+	 */
+	public void setFilter(final String pattern) {
+		final NameMatcher newMatcher = new NameMatcher(pattern);
+		if (newMatcher.getPattern().equals(matcher.getPattern())) {
+			return;
+		}
+		matcher = newMatcher;
+		applyFilter();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.eclipse.jface.viewers.ILazyTreeContentProvider#updateChildCount(java.lang.Object, int)
+	 */
+	@Override
+	public void updateChildCount(final Object element,
+			final int currentChildCount) {
+		final int count = getChildCount(element);
+		if (count != currentChildCount) {
+			viewer.setChildCount(element, count);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.eclipse.jface.viewers.ILazyTreeContentProvider#updateElement(java.lang.Object, int)
+	 */
+	@Override
+	public void updateElement(final Object parent, final int index) {
+		final Object[] children = getView(parent);
+		if (children == null) {
+			// being listed, the children read so far and the placeholder
+			final List<File> partial = getPartial(parent);
+			final int count = partial == null ? 0 : partial.size();
+			if (index < count) {
+				replace(parent, index, partial.get(index));
+				return;
+			}
+			final LoadingElement placeholder = placeholders.get(parent);
+			if (placeholder != null && index == count) {
+				viewer.replace(parent, index, placeholder);
+				viewer.setChildCount(placeholder, 0);
+			}
+			return;
+		}
+		if (index < children.length) {
+			replace(parent, index, children[index]);
+		}
+	}
+
+	/**
+	 * Cancels all the running listings.
+	 */
+	protected void cancel() {
+		for (final DirectoryListingJob job : jobs.values()) {
+			job.cancel();
+		}
+		jobs.clear();
+		placeholders.clear();
+		partials.clear();
+	}
+
+	/**
+	 * Matches the names of the input listing, if any, with the current
+	 * pattern in a job and shows the result.
+	 */
+	private void applyFilter() {
+		cancelFilter();
+		if (viewer == null) {
+			return;
+		}
+		final Object input = viewer.getInput();
+		if (matcher.isEmpty()) {
+			if (matches != null) {
+				matches = null;
+				refresh(input);
+			}
+			return;
+		}
+		final Object[] children = listings.get(input);
+		final String[] childNames = names.get(input);
+		if (children == null || childNames == null) {
+			// applied when listed
+			return;
+		}
+
+		final NameMatcher jobMatcher = matcher;
+		final Control control = viewer.getControl();
+		final Job[] self = new Job[1];
+		final Job job = new Job("Filter " + jobMatcher) { //$NON-NLS-1$
+			@Override
+			protected IStatus run(final IProgressMonitor monitor) {
+				final List<Object> result = new ArrayList<Object>();
+				for (int i = 0; i < childNames.length; i++) {
+					if ((i & 0xFF) == 0 && monitor.isCanceled()) {
+						return Status.CANCEL_STATUS;
+					}
+					if (jobMatcher.matches(childNames[i])) {
+						result.add(children[i]);
+					}
+				}
+				final Object[] found = result.toArray();
+				if (control.isDisposed()) {
+					return Status.OK_STATUS;
+				}
+				control.getDisplay().asyncExec(new Runnable() {
+					@Override
+					public void run() {
+						if (control.isDisposed() || filterJob != self[0]) {
+							return;
+						}
+						filterJob = null;
+						matches = found;
+						refresh(input);
+					}
+				});
+				return Status.OK_STATUS;
+			}
+		};
+		job.setSystem(true);
+		job.setPriority(Job.INTERACTIVE);
+		self[0] = job;
+		filterJob = job;
+		job.schedule();
+	}
+
+	/**
+	 * Cancels the running filter job, if any.
+	 */
+	private void cancelFilter() {
+		if (filterJob != null) {
+			filterJob.cancel();
+			filterJob = null;
+		}
+	}
+
+	/**
+	 * Cancels the running probe job, if any, and forgets the waiting
+	 * directories.
+	 */
+	private void cancelProbes() {
+		synchronized (probes) {
+			probes.clear();
+		}
+		if (probeJob != null) {
+			probeJob.cancel();
+		}
+	}
+
+	/**
+	 * Probes the given directory in the background and removes its expander
+	 * if it has no children.
+	 */
+	private void probe(final File directory) {
+		synchronized (probes) {
+			if (!probes.add(directory)) {
+				return;
+			}
+		}
+		if (probeJob == null) {
+			probeJob = new Job("Probe directories") { //$NON-NLS-1$
+				@Override
+				protected IStatus run(final IProgressMonitor monitor) {
+					final TreeViewer treeViewer = viewer;
+					if (treeViewer == null) {
+						return Status.OK_STATUS;
+					}
+					final Control control = treeViewer.getControl();
+					for (;;) {
+						final List<File> batch;
+						synchronized (probes) {
+							if (probes.isEmpty()) {
+								return Status.OK_STATUS;
+							}
+							batch = new ArrayList<File>(probes);
+							probes.clear();
+						}
+						final List<File> empty = new ArrayList<File>();
+						for (final File directory : batch) {
+							if (monitor.isCanceled()) {
+								return Status.CANCEL_STATUS;
+							}
+							if (!probe.hasChildren(directory, treeViewer,
+									filters)) {
+								empty.add(directory);
+							}
+						}
+						if (empty.isEmpty() || control.isDisposed()) {
+							continue;
+						}
+						control.getDisplay().asyncExec(new Runnable() {
+							@Override
+							public void run() {
+								if (control.isDisposed()) {
+									return;
+								}
+								for (final File directory : empty) {
+									// skip the results cleared by a new input
+									if (listings.get(directory) == null
+											&& Boolean.FALSE.equals(probe
+													.getResult(directory,
+															filters))) {
+										treeViewer.setHasChildren(directory,
+												false);
+									}
+								}
+							}
+						});
+					}
+				}
+			};
+			probeJob.setSystem(true);
+			probeJob.setPriority(Job.SHORT);
+		}
+		probeJob.schedule();
+	}
+
+	/**
+	 * Filters the given elements with the filters of this provider.
+	 */
+	private Object[] applyFilters(final Object parent, Object[] elements) {
+		if (filters != null) {
+			for (final ViewerFilter filter : filters) {
+				elements = filter.filter(viewer, parent, elements);
+			}
+		}
+		return elements;
+	}
+
+	/**
+	 * Gets the number of children of the given element, starting a
+	 * background listing if needed.
+	 * 
+	 * @return the number of children, the number of children read so far
+	 *         plus 1 for the placeholder while listing.
+	 */
+	private int getChildCount(final Object element) {
+		final Object[] children = getView(element);
+		if (children != null) {
+			return children.length;
+		}
+
+		// computer ?
+		if (element instanceof Computer) {
+			final Object[] drives = applyFilters(element,
+					((Computer) element).getDrives());
+			if (comparator != null) {
+				comparator.sort(viewer, drives);
+			}
+			listings.put(element, drives);
+			names.put(element, getNames(drives));
+			return drives.length;
+		}
+
+		// file ?
+		if (element instanceof File) {
+			schedule((File) element);
+			final List<File> partial = getPartial(element);
+			return partial == null ? 1 : partial.size() + 1;
+		}
+
+		// no data
+		return 0;
+	}
+
+	/**
+	 * Starts the background listing of the given directory, if not yet
+	 * running.
+	 * 
+	 * @param parent
+	 *            the directory to list.
+	 */
+	private void schedule(final File parent) {
+		if (placeholders.containsKey(parent)) {
+			return;
+		}
+		final LoadingElement placeholder = new LoadingElement(parent);
+		placeholders.put(parent, placeholder);
+
+		final TreeViewer treeViewer = viewer;
+		final Control control = treeViewer.getControl();
+		final DirectoryListingJob[] self = new DirectoryListingJob[1];
+		final DirectoryListingJob job = new DirectoryListingJob(parent,
+				treeViewer, filters, new DirectoryListingJob.Collector() {
+					@Override
+					public void add(final File[] files) {
+						if (control.isDisposed()) {
+							return;
+						}
+						control.getDisplay().asyncExec(new Runnable() {
+							@Override
+							public void run() {
+								if (control.isDisposed()
+										|| jobs.get(parent) != self[0]) {
+									return;
+								}
+								List<File> partial = partials.get(parent);
+								if (partial == null) {
+									partial = new ArrayList<File>();
+									partials.put(parent, partial);
+								}
+								final int shown = partial.size();
+								partial.addAll(Arrays.asList(files));
+								if (getPartial(parent) != null) {
+									treeViewer.setChildCount(parent,
+											partial.size() + 1);
+									// the row of the placeholder
+									updateElement(parent, shown);
+								}
+							}
+						});
+					}
+
+					@Override
+					public void done(final File[] files) {
+						// sort and index in the job thread
+						if (comparator != null) {
+							comparator.sort(treeViewer, files);
+						}
+						final String[] fileNames = getNames(files);
+						if (control.isDisposed()) {
+							return;
+						}
+						control.getDisplay().asyncExec(new Runnable() {
+							@Override
+							public void run() {
+								if (control.isDisposed()
+										|| jobs.get(parent) != self[0]) {
+									return;
+								}
+								jobs.remove(parent);
+								placeholders.remove(parent);
+								partials.remove(parent);
+								listings.put(parent, files);
+								names.put(parent, fileNames);
+								probe.put(parent, files.length > 0);
+								if (parent.equals(treeViewer.getInput())
+										&& !matcher.isEmpty()) {
+									applyFilter();
+								} else {
+									refresh(parent);
+								}
+							}
+						});
+					}
+				});
+		self[0] = job;
+		jobs.put(parent, job);
+		job.schedule();
+	}
+
+	/**
+	 * Gets the names of the given elements.
+	 */
+	private static String[] getNames(final Object[] elements) {
+		final String[] result = new String[elements.length];
+		for (int i = 0; i < elements.length; i++) {
+			final Object element = elements[i];
+			if (element instanceof File) {
+				final File file = (File) element;
+				final String name = file.getName();
+				result[i] = name.length() == 0 ? file.getPath() : name;
+			} else {
+				result[i] = String.valueOf(element);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Gets the children read so far by the listing of the given element, or
+	 * <code>null</code> if none or if the element is the filtered input,
+	 * whose children are shown once matched.
+	 */
+	private List<File> getPartial(final Object element) {
+		if (!matcher.isEmpty() && viewer != null
+				&& element.equals(viewer.getInput())) {
+			return null;
+		}
+		return partials.get(element);
+	}
+
+	/**
+	 * Replaces the child at the given index and tells the viewer whether it
+	 * can be expanded.
+	 */
+	private void replace(final Object parent, final int index,
+			final Object child) {
+		viewer.replace(parent, index, child);
+
+		// the children of a listed directory are known
+		final Object[] grandChildren = listings.get(child);
+		if (grandChildren != null) {
+			viewer.setChildCount(child, grandChildren.length);
+		} else if (child instanceof File && ((File) child).isDirectory()) {
+			// an expander until probed in the background
+			final File directory = (File) child;
+			final Boolean known = probe.getResult(directory, filters);
+			viewer.setHasChildren(child, known == null || known.booleanValue());
+			if (known == null) {
+				probe(directory);
+			}
+		} else {
+			viewer.setHasChildren(child, false);
+		}
+	}
+
+	/**
+	 * Gets the children shown for the given element: the matching children
+	 * for the filtered input, the listing otherwise.
+	 */
+	private Object[] getView(final Object element) {
+		if (matches != null && viewer != null
+				&& element.equals(viewer.getInput())) {
+			return matches;
+		}
+		return listings.get(element);
+	}
+
+	/**
+	 * Refreshes the given element and notifies the listing listeners.
+	 */
+	private void refresh(final Object element) {
+		viewer.refresh(element);
+		for (final IListingListener listener : new ArrayList<IListingListener>(
+				listeners)) {
+			listener.listingDone(element);
+		}
+	}
+}
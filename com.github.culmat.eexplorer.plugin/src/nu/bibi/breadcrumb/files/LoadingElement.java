@@ -0,0 +1,57 @@
+/*******************************************************************************
+ * Copyright (c) 2008 Laurent Muller.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     Laurent Muller - initial API and implementation
+ *******************************************************************************/
+package nu.bibi.breadcrumb.files;
+
+import nu.bibi.breadcrumb.internal.Messages;
+
+/**
+ * The placeholder element displayed while the children of a directory are
+ * listed in the background. Each instance is only equal to itself.
+ * 
+ * @author Laurent Muller
+ * @version 1.0
+ */
+public class LoadingElement {
+
+	/*
+	 * the parent element
+	 */
+	private final Object parent;
+
+	/**
+	 * Create a new instance of this class.
+	 * 
+	 * @param parent
+	 *            the element being loaded.
+	 */
+	public LoadingElement(final Object parent) {
+		this.parent = parent;
+	}
+
+	/**
+	 * Gets the element being loaded.
+	 * 
+	 * @return the parent element.
+	 */
+	public Object getParent() {
+		return parent;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return Messages.FileContentProvider_Loading;
+	}
+}
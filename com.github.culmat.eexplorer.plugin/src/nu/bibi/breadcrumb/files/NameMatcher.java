@@ -0,0 +1,170 @@
+/*******************************************************************************
+ * Copyright (c) 2008 Laurent Muller.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     Laurent Muller - initial API and implementation
+ *******************************************************************************/
+package nu.bibi.breadcrumb.files;
+
+import java.util.Locale;
+
+/**
+ * Matches file names against a pattern typed by the user. A name matches if
+ * it starts with the pattern, contains the pattern (both ignoring case) or if
+ * the pattern is made of the leading characters of the name's words (camel
+ * case): <code>FCP</code> and <code>FiConPro</code> match
+ * <code>FileContentProvider</code>, <code>mfn</code> matches
+ * <code>my-file_name.txt</code>.
+ * <p>
+ * Instances are immutable and can be used from any thread.
+ * </p>
+ * 
+ * @author Laurent Muller
+ * @version 1.0
+ */
+public class NameMatcher {
+
+	/*
+	 * the pattern and its lower case form
+	 */
+	private final String pattern;
+	private final String lowerPattern;
+
+	/**
+	 * Create a new instance of this class.
+	 * 
+	 * @param pattern
+	 *            the pattern, an empty pattern matches all the names.
+	 */
+	public NameMatcher(final String pattern) {
+		this.pattern = pattern.trim();
+		this.lowerPattern = this.pattern.toLowerCase(Locale.ROOT);
+	}
+
+	/**
+	 * Gets the pattern.
+	 * 
+	 * @return the pattern.
+	 */
+	public String getPattern() {
+		return pattern;
+	}
+
+	/**
+	 * Returns whether this matcher accepts all the names.
+	 * 
+	 * @return <code>true</code> if the pattern is empty.
+	 */
+	public boolean isEmpty() {
+		return pattern.length() == 0;
+	}
+
+	/**
+	 * Returns whether the given name matches the pattern.
+	 * 
+	 * @param name
+	 *            the name to test.
+	 * @return <code>true</code> if the name starts with, contains or camel
+	 *         case matches the pattern.
+	 */
+	public boolean matches(final String name) {
+		if (isEmpty()) {
+			return true;
+		}
+		final String lowerName = name.toLowerCase(Locale.ROOT);
+		// the substring test includes the prefix test
+		if (lowerName.contains(lowerPattern)) {
+			return true;
+		}
+		final int width = pattern.length() + 1;
+		return matchesWords(name, 0, 0, new boolean[(name.length() + 1)
+				* width]);
+	}
+
+	/**
+	 * Returns whether the pattern, from the given index, matches the leading
+	 * characters of the words of the name, from the given index. The failed
+	 * positions are recorded to avoid testing them again.
+	 */
+	private boolean matchesWords(final String name, final int nameIndex,
+			final int patternIndex, final boolean[] failed) {
+		if (patternIndex == pattern.length()) {
+			return true;
+		}
+		final int position = nameIndex * (pattern.length() + 1)
+				+ patternIndex;
+		if (failed[position]) {
+			return false;
+		}
+
+		// try each following word start
+		for (int start = nextWordStart(name, nameIndex); start < name
+				.length(); start = nextWordStart(name, start + 1)) {
+			// match as many characters as possible in this word
+			int i = start;
+			int j = patternIndex;
+			while (j < pattern.length() && i < name.length()
+					&& equalsIgnoreCase(name.charAt(i), pattern.charAt(j))
+					&& (i == start || !isWordStart(name, i))) {
+				i++;
+				j++;
+				if (matchesWords(name, i, j, failed)) {
+					return true;
+				}
+			}
+		}
+		failed[position] = true;
+		return false;
+	}
+
+	/**
+	 * Gets the index of the first word start at or after the given index.
+	 */
+	private static int nextWordStart(final String name, int index) {
+		while (index < name.length() && !isWordStart(name, index)) {
+			index++;
+		}
+		return index;
+	}
+
+	/**
+	 * Returns whether a word starts at the given index: the first letter or
+	 * digit, a letter or digit after a separator, an upper case letter after
+	 * a lower case letter or a digit after a letter.
+	 */
+	private static boolean isWordStart(final String name, final int index) {
+		final char ch = name.charAt(index);
+		if (!Character.isLetterOrDigit(ch)) {
+			return false;
+		}
+		if (index == 0) {
+			return true;
+		}
+		final char previous = name.charAt(index - 1);
+		if (!Character.isLetterOrDigit(previous)) {
+			return true;
+		}
+		if (Character.isUpperCase(ch) && Character.isLowerCase(previous)) {
+			return true;
+		}
+		return Character.isDigit(ch) && !Character.isDigit(previous);
+	}
+
+	private static boolean equalsIgnoreCase(final char c1, final char c2) {
+		return Character.toLowerCase(c1) == Character.toLowerCase(c2);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return pattern;
+	}
+}
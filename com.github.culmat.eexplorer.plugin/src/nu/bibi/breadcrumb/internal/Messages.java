@@ -20,12 +20,15 @@ public class Messages extends NLS {
 	private static final String BUNDLE_NAME = "nu.bibi.breadcrumb.internal.messages"; //$NON-NLS-1$
 
 	public static String BreadcrumbItemDropDown_Action_ToolTip;
+	public static String BreadcrumbItemDropDown_Filter_Message;
 	public static String BreadcrumbView_Directory_Text;
 
 	public static String BreadcrumbView_Root_Text;
 
 	public static String Computer_Name;
 
+	public static String FileContentProvider_Loading;
+
 	static {
 		// initialize resource bundle
 		NLS.initializeMessages(BUNDLE_NAME, Messages.class);